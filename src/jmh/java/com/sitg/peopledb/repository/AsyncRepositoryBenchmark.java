@@ -0,0 +1,89 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many concurrent findById calls the async facade sustains when they run on virtual
+ * threads versus a fixed pool of platform threads. Each invocation fires off a burst of
+ * calls and waits for all of them. On JVMs without virtual threads the "virtual"
+ * executor falls back to a cached platform pool.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncRepositoryBenchmark {
+    static final int TABLE_SIZE = 10_000;
+    static final int BURST = 1_000;
+
+    @Param({"virtual", "fixed"})
+    public String executorType;
+
+    @Param({"8", "32"})
+    public int connections;
+
+    private PeopleDatabase database;
+    private ConnectionPool pool;
+    private ExecutorService executor;
+    private AsyncRepository<Person> async;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = PeopleDatabase.inMemory("asyncbenchmark");
+        try (Connection connection = database.openConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                    INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB) SELECT 'First' || X, 'Last' || X,
+                    TIMESTAMP '1980-01-01 00:00:00' FROM SYSTEM_RANGE(1, %d)""".formatted(TABLE_SIZE));
+        }
+        pool = new ConnectionPool(database.getUrl(), connections);
+        executor = executorType.equals("virtual")
+                ? AsyncRepository.newDefaultExecutor()
+                : Executors.newFixedThreadPool(connections);
+        async = new AsyncRepository<>(new PeopleRepository(pool), connections, executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        async.close();
+        executor.shutdown();
+        pool.close();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void concurrentFindById() {
+        CompletableFuture<?>[] finds = new CompletableFuture<?>[BURST];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < BURST; i++) {
+            finds[i] = async.findById(1 + random.nextLong(TABLE_SIZE));
+        }
+        CompletableFuture.allOf(finds).join();
+    }
+}
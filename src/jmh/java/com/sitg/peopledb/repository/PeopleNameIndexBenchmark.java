@@ -0,0 +1,97 @@
+package com.sitg.peopledb.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-N autocomplete lookups on a million people: PeopleNameIndex against a
+ * case-insensitive prefix LIKE over both name columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PeopleNameIndexBenchmark {
+    static final int TABLE_SIZE = 1_000_000;
+    static final int LIMIT = 10;
+    static final String LIKE_SQL = """
+            SELECT ID FROM PEOPLE WHERE LOWER(FIRST_NAME) LIKE ? OR LOWER(LAST_NAME) LIKE ?
+            ORDER BY ID LIMIT ?""";
+
+    @Param({"2", "4"})
+    public int prefixLength;
+
+    private PeopleDatabase database;
+    private Connection connection;
+    private PeopleNameIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = PeopleDatabase.inMemory("nameindexbenchmark");
+        connection = database.openConnection();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                    INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB) SELECT 'First' || MOD(X, 5000),
+                    'Last' || MOD(X, 20000), TIMESTAMP '1980-01-01 00:00:00' FROM SYSTEM_RANGE(1, %d)""".formatted(TABLE_SIZE));
+        }
+        index = PeopleNameIndex.attach(database.newRepository());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    private String prefix() {
+        String name = ThreadLocalRandom.current().nextBoolean()
+                ? "first" + ThreadLocalRandom.current().nextInt(5000)
+                : "last" + ThreadLocalRandom.current().nextInt(20000);
+        return name.substring(0, Math.min(name.length(), name.indexOf('t') + 1 + prefixLength));
+    }
+
+    @Benchmark
+    public List<Long> index() {
+        return index.findIdsByPrefix(prefix(), LIMIT);
+    }
+
+    @Benchmark
+    public List<Long> like() throws SQLException {
+        String pattern = prefix() + "%";
+        try (PreparedStatement ps = connection.prepareStatement(LIKE_SQL)) {
+            ps.setString(1, pattern);
+            ps.setString(2, pattern);
+            ps.setInt(3, LIMIT);
+            List<Long> ids = new ArrayList<>(LIMIT);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+            return ids;
+        }
+    }
+}
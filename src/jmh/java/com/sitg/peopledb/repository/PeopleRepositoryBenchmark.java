@@ -0,0 +1,156 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import com.sitg.peopledb.model.PersonName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the basic repository operations against in-memory and file-backed H2.
+ * The repository sits on a ConnectionPool so the same benchmarks can be run with more
+ * threads through JMH's -t option.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeopleRepositoryBenchmark {
+    static final int DELETE_BATCH_SIZE = 100;
+
+    @Param({"mem", "file"})
+    public String storage;
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    ConnectionPool pool;
+    PeopleRepository repo;
+    private PeopleDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (storage.equals("mem")) {
+            database = PeopleDatabase.inMemory("benchmark");
+        } else {
+            Path file = Path.of("build", "jmh-db", "people");
+            Files.deleteIfExists(file.resolveSibling("people.mv.db"));
+            database = PeopleDatabase.file(file);
+        }
+        pool = new ConnectionPool(database.getUrl(), 64);
+        repo = new PeopleRepository(pool);
+        List<Person> people = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            people.add(newPerson(i));
+        }
+        repo.saveAll(people);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        database.close();
+    }
+
+    static Person newPerson(int i) {
+        return new Person("First" + i, "Last" + (i % 1000), ZonedDateTime.of(1950 + i % 50, 1 + i % 12, 1 + i % 28, 0, 0, 0, 0, ZoneOffset.UTC));
+    }
+
+    long randomId() {
+        return 1 + ThreadLocalRandom.current().nextLong(tableSize);
+    }
+
+    @State(Scope.Thread)
+    public static class PendingDeletes {
+        List<Long> ids;
+
+        @Setup(Level.Invocation)
+        public void insertRowsToDelete(PeopleRepositoryBenchmark benchmark) {
+            List<Person> people = new ArrayList<>(DELETE_BATCH_SIZE);
+            for (int i = 0; i < DELETE_BATCH_SIZE; i++) {
+                people.add(newPerson(i));
+            }
+            ids = benchmark.repo.saveAll(people).stream().map(Person::getId).toList();
+        }
+    }
+
+    @Benchmark
+    public Person save() {
+        return repo.save(newPerson(ThreadLocalRandom.current().nextInt(tableSize)));
+    }
+
+    @Benchmark
+    public Optional<Person> findById() {
+        return repo.findById(randomId());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Person> findAll() {
+        return repo.findAll();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PersonName> findAllNames() {
+        return repo.findAllAs(PeopleRepository.NAMES);
+    }
+
+    @Benchmark
+    public long count() {
+        return repo.count();
+    }
+
+    @Benchmark
+    public void update() {
+        long id = randomId();
+        Person person = newPerson((int) id);
+        person.setId(id);
+        person.setSalary(BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(20_000, 200_000)));
+        repo.update(person);
+    }
+
+    /**
+     * Updates only SALARY, the common case that dirty tracking turns into a one-column UPDATE.
+     */
+    @Benchmark
+    public void updateSalary() {
+        long id = randomId();
+        Person person = newPerson((int) id);
+        person.setId(id);
+        person.clearChangedProperties();
+        person.setSalary(BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(20_000, 200_000)));
+        repo.update(person);
+    }
+
+    @Benchmark
+    public void bulkDelete(PendingDeletes pending) {
+        repo.deleteAllById(pending.ids);
+    }
+}
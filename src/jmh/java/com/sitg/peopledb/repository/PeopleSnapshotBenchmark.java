@@ -0,0 +1,104 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Scans over a PeopleSnapshot against the same scans over a List<Person> loaded with
+ * findAll: a filtered salary total and a salary total per last name.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PeopleSnapshotBenchmark {
+    static final int TABLE_SIZE = 1_000_000;
+    static final LocalDate BORN_FROM = LocalDate.of(1970, 1, 1);
+    static final LocalDate BORN_TO = LocalDate.of(1979, 12, 31);
+
+    private List<Person> people;
+    private PeopleSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        try (PeopleDatabase database = PeopleDatabase.inMemory("snapshotbenchmark")) {
+            try (Connection connection = database.openConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                        INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY) SELECT 'First' || MOD(X, 5000),
+                        'Last' || MOD(X, 20000), DATEADD(DAY, MOD(X, 25000), TIMESTAMP '1950-01-01 00:00:00'),
+                        MOD(X, 150000) + 0.5 FROM SYSTEM_RANGE(1, %d)""".formatted(TABLE_SIZE));
+            }
+            PeopleRepository repo = database.newRepository();
+            people = repo.findAll();
+            snapshot = PeopleSnapshot.load(repo);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        people = null;
+        snapshot = null;
+    }
+
+    @Benchmark
+    public BigDecimal listFilteredTotal() {
+        ZonedDateTime from = BORN_FROM.atStartOfDay(ZoneOffset.UTC);
+        ZonedDateTime to = BORN_TO.plusDays(1).atStartOfDay(ZoneOffset.UTC);
+        return people.stream()
+                .filter(person -> !person.getDob().isBefore(from) && person.getDob().isBefore(to))
+                .map(Person::getSalary)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public BigDecimal snapshotFilteredTotal() {
+        return snapshot.getSalaryStats(BORN_FROM, BORN_TO).total();
+    }
+
+    @Benchmark
+    public BigDecimal snapshotFilteredTotalParallel() {
+        return snapshot.parallel().getSalaryStats(BORN_FROM, BORN_TO).total();
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> listTotalByLastName() {
+        return people.stream().collect(Collectors.groupingBy(Person::getLastName,
+                Collectors.reducing(BigDecimal.ZERO, Person::getSalary, BigDecimal::add)));
+    }
+
+    @Benchmark
+    public List<SalaryStats<String>> snapshotStatsByLastName() {
+        return snapshot.getSalaryStatsByLastName();
+    }
+
+    @Benchmark
+    public List<SalaryStats<String>> snapshotStatsByLastNameParallel() {
+        return snapshot.parallel().getSalaryStatsByLastName();
+    }
+}
@@ -0,0 +1,83 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Rows inserted per second into file databases split over 1, 2 or 4 shards, both as bulk
+ * saveAll calls that fan out to every shard and as single saves from several threads.
+ * Writes only scale while there are cores to run the shards on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedRepositoryBenchmark {
+    static final int BATCH = 1_000;
+    static final ZonedDateTime DOB = ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private Path directory;
+    private ShardedPeopleRepository repo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sharded-benchmark");
+        repo = ShardedPeopleRepository.open(directory, shards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repo.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void saveAll() {
+        repo.saveAll(IntStream.range(0, BATCH).mapToObj(i -> new Person("First" + i, "Last" + i, DOB)).toList());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Person concurrentSave() {
+        return repo.save(new Person("John", "Smith", DOB));
+    }
+}
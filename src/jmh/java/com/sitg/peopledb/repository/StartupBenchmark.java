@@ -0,0 +1,88 @@
+package com.sitg.peopledb.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from nothing to a PeopleDatabase that's ready to serve queries, for an empty
+ * in-memory database, an empty file database, and in-memory databases preloaded from
+ * a CSV or SQL script snapshot of SNAPSHOT_SIZE rows.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    static final int SNAPSHOT_SIZE = 10_000;
+    static final Path DIR = Path.of("build", "jmh-db");
+
+    @Param({"mem", "file", "mem-csv", "mem-script"})
+    public String mode;
+
+    private Path snapshot;
+    private PeopleDatabase database;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot() throws IOException, SQLException {
+        if (!mode.startsWith("mem-")) {
+            return;
+        }
+        Files.createDirectories(DIR);
+        try (PeopleDatabase source = PeopleDatabase.inMemory("startup-source")) {
+            try (Connection connection = source.openConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                        INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY) SELECT 'First' || X, 'Last' || X,
+                        TIMESTAMP '1980-01-01 00:00:00', X FROM SYSTEM_RANGE(1, %d)""".formatted(SNAPSHOT_SIZE));
+            }
+            if (mode.equals("mem-csv")) {
+                snapshot = DIR.resolve("startup.csv");
+                new PeopleCsv(source.newRepository()).exportTo(snapshot);
+            } else {
+                snapshot = DIR.resolve("startup.sql");
+                source.writeSnapshot(snapshot);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(DIR.resolve("startup.mv.db"));
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        database.close();
+    }
+
+    @Benchmark
+    public PeopleDatabase open() {
+        database = switch (mode) {
+            case "mem" -> PeopleDatabase.inMemory("startup");
+            case "file" -> PeopleDatabase.file(DIR.resolve("startup"));
+            default -> PeopleDatabase.inMemory("startup", snapshot);
+        };
+        return database;
+    }
+}
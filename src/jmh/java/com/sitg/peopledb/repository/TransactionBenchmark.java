@@ -0,0 +1,75 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Committed single-row transactions per second from 8 threads on a file database: each
+ * save auto-committed on its own, each wrapped in inTransaction, and each submitted to a
+ * GroupCommitter that commits whatever is waiting together. H2 doesn't sync on commit, so
+ * groupCommit measures what the hand-off to the committer thread costs, not a speedup;
+ * expect it well below autocommit.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+    static final ZonedDateTime DOB = ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Param({"autocommit", "inTransaction", "groupCommit"})
+    public String mode;
+
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+    private GroupCommitter<Person> committer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path file = Path.of("build", "jmh-db", "transactions");
+        Files.deleteIfExists(file.resolveSibling("transactions.mv.db"));
+        database = PeopleDatabase.file(file);
+        repo = database.newRepository();
+        committer = new GroupCommitter<>(repo);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        committer.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Person save() {
+        Person person = new Person("John", "Smith", DOB);
+        return switch (mode) {
+            case "autocommit" -> repo.save(person);
+            case "inTransaction" -> repo.inTransaction(() -> repo.save(person));
+            case "groupCommit" -> committer.inTransaction(() -> repo.save(person));
+            default -> throw new IllegalArgumentException(mode);
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package com.sitg.peopledb.exception;
+
+/**
+ * Thrown when an update finds that the row's version no longer matches the entity's,
+ * because another writer updated or deleted it since the entity was loaded.
+ */
+public class OptimisticLockException extends DataAccessException {
+    private static final long serialVersionUID = 1L;
+
+    public OptimisticLockException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.sitg.peopledb.exception;
+
+public class UnableToAcquireConnectionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UnableToAcquireConnectionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.sitg.peopledb.exception;
+
+public class UnableToExportException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UnableToExportException(String message) {
+        super(message);
+    }
+
+    public UnableToExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
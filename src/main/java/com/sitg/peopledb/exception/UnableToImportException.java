@@ -0,0 +1,13 @@
+package com.sitg.peopledb.exception;
+
+public class UnableToImportException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UnableToImportException(String message) {
+        super(message);
+    }
+
+    public UnableToImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,7 +1,13 @@
 package com.sitg.peopledb.exception;
 
 public class UnableToSaveException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     public UnableToSaveException(String message) {
         super(message);
     }
+
+    public UnableToSaveException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
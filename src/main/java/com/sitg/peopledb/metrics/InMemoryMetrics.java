@@ -0,0 +1,62 @@
+package com.sitg.peopledb.metrics;
+
+import com.sitg.peopledb.repository.RepositoryListener;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps per-statement counts, errors, rows and a latency histogram in memory.
+ * Recording only touches LongAdders and atomic counters, so it can stay on under load.
+ */
+public class InMemoryMetrics implements RepositoryListener {
+    private static class StatementMetrics {
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final ConcurrentHashMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+
+    @Override
+    public void onSuccess(String sql, long elapsedNanos, long rows) {
+        StatementMetrics metrics = metricsFor(sql);
+        metrics.rows.add(rows);
+        metrics.latency.record(elapsedNanos);
+    }
+
+    @Override
+    public void onError(String sql, long elapsedNanos, Exception error) {
+        StatementMetrics metrics = metricsFor(sql);
+        metrics.errors.increment();
+        metrics.latency.record(elapsedNanos);
+    }
+
+    private StatementMetrics metricsFor(String sql) {
+        StatementMetrics metrics = statements.get(sql);
+        return metrics != null ? metrics : statements.computeIfAbsent(sql, key -> new StatementMetrics());
+    }
+
+    public StatementStats getStats(String sql) {
+        StatementMetrics metrics = statements.get(sql);
+        return metrics == null ? new StatementStats(sql, 0, 0, 0, 0, 0, 0, 0, 0) : snapshot(sql, metrics);
+    }
+
+    public Map<String, StatementStats> getAllStats() {
+        Map<String, StatementStats> stats = new TreeMap<>();
+        statements.forEach((sql, metrics) -> stats.put(sql, snapshot(sql, metrics)));
+        return stats;
+    }
+
+    public void reset() {
+        statements.clear();
+    }
+
+    private static StatementStats snapshot(String sql, StatementMetrics metrics) {
+        LatencyHistogram latency = metrics.latency;
+        return new StatementStats(sql, latency.getCount(), metrics.errors.sum(), metrics.rows.sum(), latency.getMean(),
+                latency.percentile(50), latency.percentile(90), latency.percentile(99), latency.getMax());
+    }
+}
@@ -0,0 +1,5 @@
+package com.sitg.peopledb.metrics;
+
+public record StatementStats(String sql, long count, long errors, long rows,
+                             double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+}
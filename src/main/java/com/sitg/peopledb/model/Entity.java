@@ -1,7 +1,41 @@
 package com.sitg.peopledb.model;
 
+import java.util.Set;
+
 public interface Entity {
     Long getId();
 
     void setId(Long id);
+
+    /**
+     * Returns the names of the properties changed since the entity was last loaded or
+     * written, or null if the entity doesn't track changes and update must write every column.
+     */
+    default Set<String> getChangedProperties() {
+        return null;
+    }
+
+    /**
+     * Marks the entity as matching its row. Repositories call this after loading or writing it.
+     */
+    default void clearChangedProperties() {
+    }
+
+    /**
+     * Marks the named properties as changed again. Repositories call this when a write that
+     * cleared them is rolled back.
+     */
+    default void markChanged(Set<String> properties) {
+    }
+
+    /**
+     * Returns the version of the row the entity was loaded from or last written to, or null
+     * if it isn't known, in which case update doesn't check it.
+     */
+    default Long getVersion() {
+        return null;
+    }
+
+    default void setVersion(Long version) {
+    }
 }
@@ -1,16 +1,28 @@
 package com.sitg.peopledb.model;
 
 import java.math.BigDecimal;
-import java.time.ZoneId;
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 
 public class Person implements Entity {
+    private static final String[] PROPERTIES = {"firstName", "lastName", "dob", "salary"};
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 1 << 1;
+    private static final int DOB = 1 << 2;
+    private static final int SALARY = 1 << 3;
+    private static final int ALL = FIRST_NAME | LAST_NAME | DOB | SALARY;
+
     private Long id;
     private String firstName;
     private String lastName;
     private ZonedDateTime dob;
     private BigDecimal salary = new BigDecimal("0");
+    private Long version;
+    /** One bit per property; everything counts as changed until a repository clears it. */
+    private byte changed = ALL;
 
     public Person(long id, String firstName, String lastName, ZonedDateTime dob, BigDecimal salary) {
         this(id, firstName, lastName, dob);
@@ -27,6 +39,16 @@ public class Person implements Entity {
         this.dob = dob;
     }
 
+    /**
+     * Copies every property of source, along with its version and changed properties.
+     */
+    public Person(Person source) {
+        this(source.id, source.firstName, source.lastName, source.dob);
+        this.salary = source.salary;
+        this.version = source.version;
+        this.changed = source.changed;
+    }
+
     @Override
     public Long getId() {
         return id;
@@ -41,7 +63,10 @@ public class Person implements Entity {
     }
 
     public void setFirstName(String firstName) {
-        this.firstName = firstName;
+        if (!Objects.equals(this.firstName, firstName)) {
+            this.firstName = firstName;
+            changed |= FIRST_NAME;
+        }
     }
 
     public String getLastName() {
@@ -49,7 +74,10 @@ public class Person implements Entity {
     }
 
     public void setLastName(String lastName) {
-        this.lastName = lastName;
+        if (!Objects.equals(this.lastName, lastName)) {
+            this.lastName = lastName;
+            changed |= LAST_NAME;
+        }
     }
 
     public ZonedDateTime getDob() {
@@ -57,7 +85,10 @@ public class Person implements Entity {
     }
 
     public void setDob(ZonedDateTime dob) {
-        this.dob = dob;
+        if (!Objects.equals(this.dob, dob)) {
+            this.dob = dob;
+            changed |= DOB;
+        }
     }
 
     public BigDecimal getSalary() {
@@ -65,7 +96,61 @@ public class Person implements Entity {
     }
 
     public void setSalary(BigDecimal salary) {
-        this.salary = salary;
+        if (!Objects.equals(this.salary, salary)) {
+            this.salary = salary;
+            changed |= SALARY;
+        }
+    }
+
+    @Override
+    public Long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public Set<String> getChangedProperties() {
+        Set<String> properties = new HashSet<>();
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            if ((changed & (1 << i)) != 0) {
+                properties.add(PROPERTIES[i]);
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    public void clearChangedProperties() {
+        changed = 0;
+    }
+
+    @Override
+    public void markChanged(Set<String> properties) {
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            if (properties.contains(PROPERTIES[i])) {
+                changed |= 1 << i;
+            }
+        }
+    }
+
+    /**
+     * Copies the named properties from source without counting them as changed, for
+     * subclasses that load some properties after construction.
+     */
+    protected void fillIn(Person source, Set<String> properties) {
+        for (String property : properties) {
+            switch (property) {
+                case "firstName" -> firstName = source.firstName;
+                case "lastName" -> lastName = source.lastName;
+                case "dob" -> dob = source.dob;
+                case "salary" -> salary = source.salary;
+                default -> throw new IllegalArgumentException("Unknown property: " + property);
+            }
+        }
     }
 
     @Override
@@ -78,16 +163,34 @@ public class Person implements Entity {
                 '}';
     }
 
+    /**
+     * People with an ID are the same person if their IDs match, whatever their other
+     * properties hold, so a partly loaded subclass equals the loaded row and hashes the same
+     * before and after it loads. People without an ID compare by their fields, read directly
+     * so that comparing never reaches the database; dates of birth are equal if they are the
+     * same instant, in any zone. Saving a person gives it an ID and so changes its hashCode,
+     * so don't save one while it sits in a hash-based collection.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Person person)) return false;
-        return Objects.equals(id, person.id) && firstName.equals(person.firstName) && lastName.equals(person.lastName) &&
-                dob.withZoneSameInstant(ZoneId.of("+0")).equals(person.dob.withZoneSameInstant(ZoneId.of("+0")));
+        if (id != null || person.id != null) {
+            return Objects.equals(id, person.id);
+        }
+        return Objects.equals(firstName, person.firstName) && Objects.equals(lastName, person.lastName)
+                && Objects.equals(instant(dob), instant(person.dob));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, firstName, lastName, dob);
+        if (id != null) {
+            return id.hashCode();
+        }
+        return Objects.hash(firstName, lastName, instant(dob));
+    }
+
+    private static Instant instant(ZonedDateTime dateTime) {
+        return dateTime == null ? null : dateTime.toInstant();
     }
 }
@@ -0,0 +1,7 @@
+package com.sitg.peopledb.model;
+
+/**
+ * A person's ID and name, for list views that don't need the rest of the row.
+ */
+public record PersonName(long id, String firstName, String lastName) {
+}
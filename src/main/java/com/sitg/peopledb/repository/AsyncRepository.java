@@ -0,0 +1,197 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs repository operations off the caller's thread and hands back CompletableFutures.
+ * At most maxInFlight operations run at once; the rest wait in a queue without holding a
+ * thread, so callers never block and the database never sees more work than it has
+ * connections for. Backed by a single Connection, maxInFlight must stay at 1.
+ */
+public class AsyncRepository<T extends Entity> implements AutoCloseable {
+    private record Task<R>(Supplier<R> work, CompletableFuture<R> future) implements Runnable {
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;  // cancelled while it was queued
+            }
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private final CRUDRepository<T> repository;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Uses virtual threads when the JVM has them and allows one operation in flight per
+     * connection: the pool's maximum size, or 1 for a single-connection repository.
+     */
+    public AsyncRepository(CRUDRepository<T> repository) {
+        this(repository, defaultMaxInFlight(repository));
+    }
+
+    public AsyncRepository(CRUDRepository<T> repository, int maxInFlight) {
+        this(repository, maxInFlight, newDefaultExecutor(), true);
+    }
+
+    public AsyncRepository(CRUDRepository<T> repository, int maxInFlight, ExecutorService executor) {
+        this(repository, maxInFlight, executor, false);
+    }
+
+    private AsyncRepository(CRUDRepository<T> repository, int maxInFlight, ExecutorService executor, boolean ownsExecutor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1 but was " + maxInFlight);
+        }
+        this.repository = repository;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    private static int defaultMaxInFlight(CRUDRepository<?> repository) {
+        return repository.getConnectionProvider() instanceof ConnectionPool pool ? pool.getMaxSize() : 1;
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor on Java 21+, looked up reflectively so the
+     * project still builds on 17, and an unbounded cached pool of daemon threads otherwise.
+     */
+    static ExecutorService newDefaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "async-repository");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public CompletableFuture<T> save(T entity) {
+        return submit(() -> repository.save(entity));
+    }
+
+    public CompletableFuture<Optional<T>> findById(Long id) {
+        return submit(() -> repository.findById(id));
+    }
+
+    public CompletableFuture<List<T>> findAll() {
+        return submit(repository::findAll);
+    }
+
+    public CompletableFuture<Void> update(T entity) {
+        return submit(() -> {
+            repository.update(entity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> delete(T entity) {
+        return submit(() -> {
+            repository.delete(entity);
+            return null;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> work) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        outstanding.incrementAndGet();
+        pending.add(new Task<>(work, future));
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Starts queued operations while there are permits. Both submitting and finishing an
+     * operation call this after changing the queue or the permits, so work can't be
+     * stranded in the queue while a permit is free.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Task<?> task = pending.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        finished();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                task.future().completeExceptionally(e);
+                permits.release();
+                finished();
+            }
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return pending.size();
+    }
+
+    private void finished() {
+        if (outstanding.decrementAndGet() == 0) {
+            synchronized (outstanding) {
+                outstanding.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for queued and running operations to finish, then shuts down the executor
+     * if this repository created it.
+     */
+    @Override
+    public void close() {
+        synchronized (outstanding) {
+            while (outstanding.get() > 0) {
+                try {
+                    outstanding.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
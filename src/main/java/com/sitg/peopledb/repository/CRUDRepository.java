@@ -1,121 +1,1090 @@
 package com.sitg.peopledb.repository;
 
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.exception.OptimisticLockException;
+import com.sitg.peopledb.exception.UnableToSaveException;
 import com.sitg.peopledb.model.Entity;
 import com.sitg.peopledb.model.Person;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-
-import static java.util.stream.Collectors.joining;
+import java.util.stream.Stream;
 
 abstract class CRUDRepository<T extends Entity> {
-    protected Connection connection;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    /** The version a new row starts at, the VERSION column's default in PeopleSchema. */
+    public static final long INITIAL_VERSION = 1;
+    public static final int DEFAULT_TRANSACTION_ATTEMPTS = 3;
+    /** The longest pause before the first retry of a transaction; it doubles for each retry after. */
+    static final long RETRY_BACKOFF_MILLIS = 5;
+    static final int[] IN_LIST_SIZES = {1, 8, 32, 128};
+    static final int MAX_IN_LIST_SIZE = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    /** What getFindAllSql() must look like for findPage and findAllById to append clauses to it. */
+    private static final Pattern BARE_SELECT = Pattern.compile("(?is)\\s*SELECT\\s.+\\sFROM\\s+[\\w.]+\\s*");
+    protected final ConnectionProvider connections;
+    private volatile EntityCache<T> cache;
+    private volatile RepositoryListener listener = RepositoryListener.NONE;
+    private final List<EntityListener<T>> entityListeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ConnectionLease> transactionLease = new ThreadLocal<>();
+    private final Map<UpdateShape, String> updateSql = new ConcurrentHashMap<>();
 
     public CRUDRepository(Connection connection) {
-        this.connection = connection;
+        this(new SingleConnectionProvider(connection));
     }
-    public T save(T entity) {
+
+    public CRUDRepository(Connection connection, int statementCacheSize) {
+        this(new SingleConnectionProvider(connection, statementCacheSize));
+    }
+
+    /**
+     * Builds a repository that borrows a connection from the provider for each operation.
+     * Backed by a ConnectionPool, the repository can be shared between threads.
+     */
+    public CRUDRepository(ConnectionProvider connections) {
+        this.connections = connections;
+    }
+
+    public ConnectionProvider getConnectionProvider() {
+        return connections;
+    }
+
+    public StatementCacheStats getStatementCacheStats() {
+        return connections.getStatementCacheStats();
+    }
+
+    /**
+     * Puts the cache in front of findById. save, update and both deletes invalidate
+     * the IDs they touch. Inside a transaction, or on a connection with auto-commit off,
+     * findById goes straight to the database, so it sees the transaction's own writes and
+     * never caches them, and the IDs written are invalidated again once the transaction
+     * commits or rolls back. Every caller gets its own copy of a cached entity, so changing
+     * one never shows through to other callers. Pass null to turn caching off.
+     */
+    public void setCache(EntityCache<T> cache) {
+        this.cache = cache;
+    }
+
+    public EntityCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * Reports every statement this repository runs to the listener, e.g. an InMemoryMetrics.
+     */
+    public void setListener(RepositoryListener listener) {
+        this.listener = listener == null ? RepositoryListener.NONE : listener;
+    }
+
+    public RepositoryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Tells the listener about every entity this repository saves, updates or deletes from
+     * now on, e.g. to keep an index like PeopleNameIndex in step with the table.
+     */
+    public void addEntityListener(EntityListener<T> entityListener) {
+        entityListeners.add(entityListener);
+    }
+
+    public void removeEntityListener(EntityListener<T> entityListener) {
+        entityListeners.remove(entityListener);
+    }
+
+    private void succeeded(String sql, long start, long rows) {
+        listener.onSuccess(sql, System.nanoTime() - start, rows);
+    }
+
+    private DataAccessException failed(String sql, long start, SQLException e) {
+        listener.onError(sql, System.nanoTime() - start, e);
+        return new DataAccessException("Unable to execute: " + sql, e);
+    }
+
+    /**
+     * Drops the ID from the cache now and, inside a transaction this repository owns,
+     * again when it ends, in case another thread cached the row it had before.
+     */
+    private void invalidate(Long id) {
+        EntityCache<T> current = cache;
+        if (current == null || id == null) {
+            return;
+        }
+        current.invalidate(id);
+        if (transactionLease.get() instanceof BoundLease bound && bound.afterCommit() != null) {
+            bound.afterCommit().add(() -> current.invalidate(id));
+            bound.onRollback().add(() -> current.invalidate(id));
+        }
+    }
+
+    /**
+     * Hands the event to every entity listener, right away or, inside a transaction that
+     * runInTransaction owns, once it commits.
+     */
+    private void notifyListeners(Consumer<EntityListener<T>> event) {
+        if (entityListeners.isEmpty()) {
+            return;
+        }
+        if (transactionLease.get() instanceof BoundLease bound && bound.afterCommit() != null) {
+            bound.afterCommit().add(() -> entityListeners.forEach(event));
+        } else {
+            entityListeners.forEach(event);
+        }
+    }
+
+    /**
+     * Remembers the entity's ID, version and changed properties before a write, so that
+     * rolling back a transaction this repository owns puts them back as they were and the
+     * entity can be written again, by a retry or by the caller.
+     */
+    private void restoreOnRollback(T entity) {
+        if (transactionLease.get() instanceof BoundLease bound && bound.onRollback() != null) {
+            Long id = entity.getId();
+            Long version = entity.getVersion();
+            Set<String> changed = entity.getChangedProperties();
+            bound.onRollback().add(() -> {
+                entity.setId(id);
+                entity.setVersion(version);
+                if (changed != null) {
+                    entity.markChanged(changed);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the undo actions from the given index on, newest first, and drops them.
+     */
+    private static void undo(List<Runnable> onRollback, int from) {
+        List<Runnable> undone = onRollback.subList(from, onRollback.size());
+        for (int i = undone.size() - 1; i >= 0; i--) {
+            undone.get(i).run();
+        }
+        undone.clear();
+    }
+
+    /**
+     * Returns the lease bound by runInTransaction on this thread, or borrows a new one.
+     */
+    ConnectionLease acquire() throws SQLException {
+        ConnectionLease bound = transactionLease.get();
+        return bound != null ? bound : connections.acquire();
+    }
+
+    /**
+     * Runs work as one transaction on one connection and returns its result, like
+     * inTransaction(DEFAULT_TRANSACTION_ATTEMPTS, work).
+     */
+    public <R> R inTransaction(Supplier<R> work) {
+        return inTransaction(DEFAULT_TRANSACTION_ATTEMPTS, work);
+    }
+
+    public void inTransaction(Runnable work) {
+        inTransaction(DEFAULT_TRANSACTION_ATTEMPTS, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs work with every operation of this repository on the current thread sharing one
+     * connection, commits once at the end and returns work's result. Any exception rolls
+     * the whole unit back. If it failed on a lock conflict (a lock timeout or deadlock), the
+     * unit is run again after a short random pause, up to maxAttempts times in all, so work
+     * must be safe to repeat. Entities written by a unit that rolls back get their ID,
+     * version and changed properties back as they were before it, so they can be written
+     * again; their other properties keep whatever work set them to.
+     * <p>
+     * Called inside another inTransaction, work runs in a savepoint of the outer transaction
+     * instead: if it throws, only its own changes are rolled back, and the exception goes
+     * to the outer work to handle. Nothing is retried at that level. If the connection
+     * already has auto-commit off, the caller owns the transaction, which work joins once,
+     * as in runInTransaction.
+     */
+    public <R> R inTransaction(int maxAttempts, Supplier<R> work) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1 but was " + maxAttempts);
+        }
+        if (transactionLease.get() instanceof BoundLease bound) {
+            return inSavepoint(bound, work);
+        }
+        return transaction(maxAttempts, work);
+    }
+
+    /**
+     * Runs work with every operation of this repository on the current thread sharing one
+     * connection, and commits once at the end. Any exception rolls the whole unit back.
+     * If the connection already has auto-commit off, the caller owns the transaction, so
+     * work joins it and nothing is committed or rolled back here, entity listeners are told
+     * about writes straight away and entities keep their new state even if the caller later
+     * rolls back. Nested calls join the outer unit.
+     */
+    void runInTransaction(Runnable work) {
+        if (transactionLease.get() != null) {
+            work.run();
+            return;
+        }
+        transaction(1, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Binds one connection to the current thread for work. When auto-commit is on, work
+     * runs in a transaction of its own, retried on lock conflicts; otherwise it joins the
+     * caller's transaction once.
+     */
+    private <R> R transaction(int maxAttempts, Supplier<R> work) {
+        R result;
+        List<Runnable> afterCommit;
+        try (ConnectionLease lease = connections.acquire()) {
+            Connection connection = lease.getConnection();
+            if (!connection.getAutoCommit()) {
+                transactionLease.set(new BoundLease(lease, null, null));
+                try {
+                    return work.get();
+                } finally {
+                    transactionLease.remove();
+                }
+            }
+            for (int attempt = 1; ; attempt++) {
+                afterCommit = new ArrayList<>();
+                List<Runnable> onRollback = new ArrayList<>();
+                transactionLease.set(new BoundLease(lease, afterCommit, onRollback));
+                Throwable failure = null;
+                try {
+                    connection.setAutoCommit(false);
+                    result = work.get();
+                    connection.commit();
+                    break;
+                } catch (SQLException | RuntimeException e) {
+                    rollbackQuietly(connection, e);
+                    undo(onRollback, 0);
+                    if (attempt == maxAttempts || !isLockConflict(e)) {
+                        failure = e;
+                        throw e;
+                    }
+                } catch (Error e) {
+                    // restoring auto-commit would commit whatever work left behind
+                    rollbackQuietly(connection, e);
+                    undo(onRollback, 0);
+                    failure = e;
+                    throw e;
+                } finally {
+                    transactionLease.remove();
+                    restoreAutoCommit(lease, failure);
+                }
+                backOff(attempt);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to run transaction", e);
+        }
+        afterCommit.forEach(Runnable::run);
+        return result;
+    }
+
+    /**
+     * Runs work between a savepoint and its release. On failure the connection, the
+     * deferred entity listener calls and the entities written are all wound back to the
+     * savepoint.
+     */
+    private <R> R inSavepoint(BoundLease bound, Supplier<R> work) {
+        Connection connection = bound.getConnection();
+        int listenerCalls = bound.afterCommit() == null ? 0 : bound.afterCommit().size();
+        int undoActions = bound.onRollback() == null ? 0 : bound.onRollback().size();
+        Savepoint savepoint;
         try {
-            PreparedStatement ps = connection.prepareStatement(getSaveSql(), Statement.RETURN_GENERATED_KEYS);
+            savepoint = connection.setSavepoint();
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to set savepoint", e);
+        }
+        R result;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            try {
+                connection.rollback(savepoint);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            if (bound.afterCommit() != null) {
+                bound.afterCommit().subList(listenerCalls, bound.afterCommit().size()).clear();
+                undo(bound.onRollback(), undoActions);
+            }
+            throw e;
+        }
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to release savepoint", e);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the failure came from the database giving up on a lock or picking this
+     * transaction as a deadlock victim, which running it again can get past.
+     */
+    static boolean isLockConflict(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void backOff(int attempt) {
+        long maxMillis = RETRY_BACKOFF_MILLIS << Math.min(attempt - 1, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while waiting to retry transaction");
+        }
+    }
+
+    /**
+     * Turns auto-commit back on before the connection goes back to its provider. If that
+     * fails, the connection is retired rather than reused with auto-commit off, and the
+     * failure is added to the exception already on its way out, or thrown if there's none.
+     */
+    private static void restoreAutoCommit(ConnectionLease lease, Throwable failure) {
+        try {
+            lease.getConnection().setAutoCommit(true);
+        } catch (SQLException e) {
+            lease.retire();
+            if (failure == null) {
+                throw new DataAccessException("Unable to restore auto-commit", e);
+            }
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection, Throwable cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * The lease handed to operations inside runInTransaction. Closing it does nothing;
+     * the connection goes back when the transaction ends. afterCommit collects the entity
+     * listener calls to make once the transaction commits, and onRollback the actions that
+     * restore written entities if it rolls back. Both are null when the caller owns the
+     * transaction.
+     */
+    private record BoundLease(ConnectionLease lease, List<Runnable> afterCommit, List<Runnable> onRollback)
+            implements ConnectionLease {
+        @Override
+        public Connection getConnection() {
+            return lease.getConnection();
+        }
+
+        @Override
+        public StatementCache getStatements() {
+            return lease.getStatements();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public T save(T entity) {
+        String sql = getSaveSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql, Statement.RETURN_GENERATED_KEYS);
             mapForSave(entity, ps);
             int recordsAffected = ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            while (rs.next()) {
-                long id = rs.getLong(1);
-                entity.setId(id);
-                System.out.println(entity);
+            restoreOnRollback(entity);
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    entity.setId(id);
+                    invalidate(id);
+                }
             }
-            System.out.printf("Records affected: %d%n", recordsAffected);
+            entity.setVersion(INITIAL_VERSION);
+            entity.clearChangedProperties();
+            succeeded(sql, start, recordsAffected);
+            notifyListeners(entityListener -> entityListener.onSaved(entity));
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(sql, start, e);
+            throw new UnableToSaveException("Tried to save: " + entity, e);
         }
         return entity;
     }
+
+    public List<T> saveAll(Collection<T> entities) {
+        return saveAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Saves the entities through one PreparedStatement, sending them to the database
+     * in chunks of batchSize rows. Generated IDs are assigned back in iteration order.
+     */
+    public List<T> saveAll(Collection<T> entities, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1 but was " + batchSize);
+        }
+        List<T> saved = new ArrayList<>(entities.size());
+        String sql = getSaveSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql, Statement.RETURN_GENERATED_KEYS);
+            try {
+                List<T> batch = new ArrayList<>(Math.min(batchSize, entities.size()));
+                for (T entity : entities) {
+                    mapForSave(entity, ps);
+                    ps.addBatch();
+                    batch.add(entity);
+                    if (batch.size() == batchSize) {
+                        executeSaveBatch(ps, batch);
+                        succeeded(sql, start, batch.size());
+                        saved.addAll(batch);
+                        batch.clear();
+                        start = System.nanoTime();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    executeSaveBatch(ps, batch);
+                    succeeded(sql, start, batch.size());
+                    saved.addAll(batch);
+                }
+            } catch (SQLException e) {
+                ps.clearBatch();
+                throw e;
+            }
+        } catch (SQLException e) {
+            failed(sql, start, e);
+            throw new UnableToSaveException("Saved %d of %d entities before failing".formatted(saved.size(), entities.size()), e);
+        }
+        return saved;
+    }
+
+    private void executeSaveBatch(PreparedStatement ps, List<T> batch) throws SQLException {
+        ps.executeBatch();
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            for (T entity : batch) {
+                if (!rs.next()) {
+                    throw new SQLException("Expected %d generated keys but got fewer".formatted(batch.size()));
+                }
+                restoreOnRollback(entity);
+                entity.setId(rs.getLong(1));
+                entity.setVersion(INITIAL_VERSION);
+                entity.clearChangedProperties();
+                invalidate(entity.getId());
+                notifyListeners(entityListener -> entityListener.onSaved(entity));
+            }
+        }
+    }
+
     public Optional<T> findById(Long id) {
-        T entity = null;
+        EntityCache<T> current = cache;
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            if (current == null || transactionLease.get() != null || !lease.getConnection().getAutoCommit()) {
+                return loadById(lease, id);
+            }
+            return current.get(id, key -> loadById(lease, key)).map(this::copy);
+        } catch (SQLException e) {
+            throw failed(getFindByIdSql(), start, e);
+        }
+    }
 
+    private Optional<T> loadById(ConnectionLease lease, Long id) {
+        T entity = null;
+        String sql = getFindByIdSql();
+        long start = System.nanoTime();
         try {
-            PreparedStatement ps = connection.prepareStatement(getFindByIdSql());
+            PreparedStatement ps = lease.getStatements().prepare(sql);
             ps.setLong(1, id);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                entity = extractEntityFromResultSet(rs);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    entity = extractEntityFromResultSet(rs);
+                }
             }
+            succeeded(sql, start, entity == null ? 0 : 1);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql, start, e);
         }
         return Optional.ofNullable(entity);
     }
 
     public List<T> findAll() {
         List<T> entities = new ArrayList<>();
-        try {
-            PreparedStatement ps = connection.prepareStatement(getFindAllSql());
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                entities.add(extractEntityFromResultSet(rs));
+        String sql = getFindAllSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<T> mapper = rowMapper(rs);
+                while (rs.next()) {
+                    entities.add(mapper.map(rs));
+                }
             }
+            succeeded(sql, start, entities.size());
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql, start, e);
         }
         return entities;
     }
+    public Stream<T> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Like findAll, but maps rows one at a time as the stream is consumed instead of
+     * loading them all first. The stream holds a connection until it's closed, so use it
+     * in a try-with-resources block. Embedded H2 only fetches lazily when the database
+     * is opened with LAZY_QUERY_EXECUTION=1; otherwise fetchSize applies to remote connections.
+     */
+    public Stream<T> streamAll(int fetchSize) {
+        return openCursor(fetchSize).stream();
+    }
+
+    public Cursor<T> openCursor() {
+        return openCursor(DEFAULT_FETCH_SIZE);
+    }
+
+    public Cursor<T> openCursor(int fetchSize) {
+        return openCursor(getFindAllSql(), fetchSize);
+    }
+
+    Cursor<T> openCursor(String sql, int fetchSize) {
+        return openCursor(sql, fetchSize, this::rowMapper);
+    }
+
+    private <R> Cursor<R> openCursor(String sql, int fetchSize, RowMapper.Factory<R> mappers) {
+        try {
+            return new Cursor<>(acquire(), sql, fetchSize, mappers, listener);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to open cursor for: " + sql, e);
+        }
+    }
+
+    /**
+     * Like findAll, but selects only the projection's columns and maps each row with it
+     * instead of building entities.
+     */
+    public <R> List<R> findAllAs(Projection<R> projection) {
+        return query(projection.selectFrom(getTableName()), Parameters.NONE, projection.mapper());
+    }
+
+    public <R> Optional<R> findByIdAs(Long id, Projection<R> projection) {
+        List<R> found = query(projection.selectFrom(getTableName()) + " WHERE ID=?", ps -> ps.setLong(1, id),
+                projection.mapper());
+        return found.stream().findFirst();
+    }
+
+    /**
+     * Like streamAll, but selects only the projection's columns. Close the stream when done.
+     */
+    public <R> Stream<R> streamAllAs(Projection<R> projection) {
+        return openCursor(projection.selectFrom(getTableName()), DEFAULT_FETCH_SIZE, projection.mapper()).stream();
+    }
+
+    public Page<T> findPage(PageToken after, int limit) {
+        return findPage(after == null ? null : after.afterId(), limit);
+    }
+
+    /**
+     * Returns up to limit entities in ID order, starting after afterId (or from the
+     * beginning when it's null). The query seeks straight to the first row through
+     * the ID index, so a deep page costs the same as the first one.
+     */
+    public Page<T> findPage(Long afterId, int limit) {
+        checkPageLimit(limit);
+        String sql = afterId == null
+                ? findAllSqlToExtend() + " ORDER BY ID LIMIT ?"
+                : findAllSqlToExtend() + " WHERE ID > ? ORDER BY ID LIMIT ?";
+        return queryPage(sql, limit, entity -> PageToken.afterId(entity.getId()), ps -> {
+            int index = 1;
+            if (afterId != null) {
+                ps.setLong(index++, afterId);
+            }
+            return index;
+        });
+    }
+
+    /**
+     * Returns up to limit entities ordered by the sort key's column and then by ID,
+     * starting after the given token (or from the beginning when it's null). Rows whose
+     * column is NULL come first; a token with a null sort value points among them.
+     * <p>
+     * The seek is spelled "column >= ? AND (column > ? OR ID > ?)" rather than as a row
+     * value comparison, which H2 can't match to an index, so with a (column, ID) index
+     * each page reads only its own rows. The one page that crosses from the NULL rows to
+     * the rest takes a second query, which has to step over the NULL rows in the index.
+     */
+    public Page<T> findPage(SortKey<T> sortKey, PageToken after, int limit) {
+        checkPageLimit(limit);
+        String column = sortKey.column();
+        String orderBy = " ORDER BY %s NULLS FIRST, ID LIMIT ?".formatted(column);
+        Function<T, PageToken> tokenOf = entity -> new PageToken(sortKey.valueOf().apply(entity), entity.getId());
+        if (after == null) {
+            return page(queryRows(findAllSqlToExtend() + orderBy, limit + 1, ps -> 1), limit, tokenOf);
+        }
+        if (after.sortValue() != null) {
+            String sql = findAllSqlToExtend() + " WHERE %s >= ? AND (%s > ? OR ID > ?)".formatted(column, column) + orderBy;
+            return page(queryRows(sql, limit + 1, ps -> {
+                ps.setObject(1, after.sortValue());
+                ps.setObject(2, after.sortValue());
+                ps.setLong(3, after.afterId());
+                return 4;
+            }), limit, tokenOf);
+        }
+        List<T> rows = queryRows(findAllSqlToExtend() + " WHERE %s IS NULL AND ID > ?".formatted(column) + orderBy,
+                limit + 1, ps -> {
+                    ps.setLong(1, after.afterId());
+                    return 2;
+                });
+        if (rows.size() <= limit) {
+            rows.addAll(queryRows(findAllSqlToExtend() + " WHERE %s IS NOT NULL".formatted(column) + orderBy,
+                    limit + 1 - rows.size(), ps -> 1));
+        }
+        return page(rows, limit, tokenOf);
+    }
+
+    private interface PageParameters {
+        /** Binds the seek parameters and returns the index of the LIMIT parameter. */
+        int bind(PreparedStatement ps) throws SQLException;
+    }
+
+    private Page<T> queryPage(String sql, int limit, Function<T, PageToken> tokenOf, PageParameters parameters) {
+        return page(queryRows(sql, limit + 1, parameters), limit, tokenOf);
+    }
+
+    /**
+     * Runs a page query for up to maxRows rows. Pages ask for one row more than they
+     * return, to tell whether another page follows.
+     */
+    private List<T> queryRows(String sql, int maxRows, PageParameters parameters) {
+        List<T> rows = new ArrayList<>(maxRows);
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            int limitIndex = parameters.bind(ps);
+            ps.setInt(limitIndex, maxRows);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<T> mapper = rowMapper(rs);
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+            succeeded(sql, start, rows.size());
+        } catch (SQLException e) {
+            throw failed(sql, start, e);
+        }
+        return rows;
+    }
+
+    private static <T> Page<T> page(List<T> rows, int limit, Function<T, PageToken> tokenOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new Page<>(items, tokenOf.apply(items.get(limit - 1)));
+    }
+
+    /**
+     * Returns getFindAllSql() for a query that appends its own WHERE, ORDER BY or LIMIT,
+     * after checking that it's a bare SELECT from one table that they can follow.
+     */
+    private String findAllSqlToExtend() {
+        String sql = getFindAllSql();
+        if (!BARE_SELECT.matcher(sql).matches()) {
+            throw new IllegalStateException("getFindAllSql() must be a bare SELECT ... FROM table, but was: " + sql);
+        }
+        return sql;
+    }
+
+    private static void checkPageLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1 but was " + limit);
+        }
+    }
+
+    @FunctionalInterface
+    interface Parameters {
+        Parameters NONE = ps -> {};
+
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * Runs a query that doesn't return entities, e.g. an aggregate, through the same
+     * connection, statement cache and listener as the other operations.
+     */
+    <R> List<R> query(String sql, Parameters parameters, RowMapper.Factory<R> mappers) {
+        List<R> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            parameters.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<R> mapper = mappers.forResultSet(rs);
+                while (rs.next()) {
+                    results.add(mapper.map(rs));
+                }
+            }
+            succeeded(sql, start, results.size());
+        } catch (SQLException e) {
+            throw failed(sql, start, e);
+        }
+        return results;
+    }
+
+    /**
+     * Runs a write that isn't an entity save, update or delete through the same connection,
+     * statement cache and listener as the other operations, and returns the rows affected.
+     */
+    long execute(String sql, Parameters parameters) {
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            parameters.bind(ps);
+            long rows = ps.executeUpdate();
+            succeeded(sql, start, rows);
+            return rows;
+        } catch (SQLException e) {
+            throw failed(sql, start, e);
+        }
+    }
+
     public long count() {
         long count = 0;
-        try {
-            PreparedStatement ps = connection.prepareStatement(getCountSql());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()) {
-                count = rs.getLong(1);
+        String sql = getCountSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()) {
+                    count = rs.getLong(1);
+                }
             }
+            succeeded(sql, start, 1);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql, start, e);
         }
         return count;
     }
     public void delete(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getDeleteSql());
+        String sql = getDeleteSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
             ps.setLong(1, entity.getId());
             int affectedRecordCount = ps.executeUpdate();
-            System.out.println(affectedRecordCount);
+            succeeded(sql, start, affectedRecordCount);
+            notifyListeners(entityListener -> entityListener.onDeleted(entity.getId()));
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql, start, e);
+        } finally {
+            invalidate(entity.getId());
         }
     }
-    public void delete(T...entities) { //like Person[] people
-        try {
-            Statement stmt = connection.createStatement();
-            String ids = Arrays.stream(entities).map(T::getId).map(String::valueOf).collect(joining(","));
-            int affectedRecordCount = stmt.executeUpdate(getDeleteInSql().replace(":ids", ids));
-            System.out.println(affectedRecordCount);
+    @SafeVarargs
+    public final void delete(T...entities) { //like Person[] people
+        List<Long> ids = new ArrayList<>(entities.length);
+        for (T entity : entities) {
+            ids.add(entity.getId());
+        }
+        deleteAllById(ids);
+    }
+
+    /**
+     * Deletes the rows with the given IDs, binding them as parameters of the
+     * getDeleteInSql() statement in chunks (see IN_LIST_SIZES). Each chunk is its own statement,
+     * so without a surrounding transaction a failure can leave earlier chunks deleted.
+     */
+    public void deleteAllById(Collection<Long> ids) {
+        List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(ids));
+        String sql = null;
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST_SIZE) {
+                List<Long> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_LIST_SIZE, distinctIds.size()));
+                int size = inListSize(chunk.size());
+                sql = expandInList(getDeleteInSql(), size);
+                start = System.nanoTime();
+                PreparedStatement ps = lease.getStatements().prepare(sql);
+                bindInList(ps, chunk, size);
+                succeeded(sql, start, ps.executeUpdate());
+                chunk.forEach(id -> notifyListeners(entityListener -> entityListener.onDeleted(id)));
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql == null ? getDeleteInSql() : sql, start, e);
+        } finally {
+            distinctIds.forEach(this::invalidate);
         }
     }
+
+    /**
+     * Loads every entity whose ID is in ids with one query per chunk of IDs (see IN_LIST_SIZES)
+     * instead of one findById per ID. IDs that don't exist are skipped, and the results come
+     * back in no particular order.
+     */
+    public List<T> findAllById(Collection<Long> ids) {
+        List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(ids));
+        List<T> entities = new ArrayList<>(distinctIds.size());
+        String sql = null;
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            for (int from = 0; from < distinctIds.size(); from += MAX_IN_LIST_SIZE) {
+                List<Long> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_LIST_SIZE, distinctIds.size()));
+                int size = inListSize(chunk.size());
+                sql = findAllSqlToExtend() + expandInList(" WHERE ID IN (:ids)", size);
+                start = System.nanoTime();
+                int found = entities.size();
+                PreparedStatement ps = lease.getStatements().prepare(sql);
+                bindInList(ps, chunk, size);
+                try (ResultSet rs = ps.executeQuery()) {
+                    RowMapper<T> mapper = rowMapper(rs);
+                    while (rs.next()) {
+                        entities.add(mapper.map(rs));
+                    }
+                }
+                succeeded(sql, start, entities.size() - found);
+            }
+        } catch (SQLException e) {
+            throw failed(sql == null ? getFindAllSql() : sql, start, e);
+        }
+        return entities;
+    }
+
+    /**
+     * Picks the smallest IN_LIST_SIZES bucket that fits count IDs. Keeping to a few fixed
+     * list lengths means the statement cache only ever sees a handful of distinct SQL strings.
+     */
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return MAX_IN_LIST_SIZE;
+    }
+
+    private static String expandInList(String sql, int size) {
+        return sql.replace(":ids", String.join(",", Collections.nCopies(size, "?")));
+    }
+
+    /**
+     * Binds the IDs and pads the rest of the list with the last ID, which
+     * doesn't change which rows an IN list matches.
+     */
+    private static void bindInList(PreparedStatement ps, List<Long> ids, int size) throws SQLException {
+        for (int i = 0; i < size; i++) {
+            ps.setLong(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+        }
+    }
+
+    /**
+     * Writes the columns of the properties the entity reports as changed, or every column
+     * if it doesn't track changes, and skips the database entirely when nothing changed.
+     * Every update bumps the row's VERSION. If the entity knows its version, the update only
+     * applies to a row still at that version and otherwise throws OptimisticLockException.
+     */
     public void update(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getUpdateSql());
-            mapForUpdate(entity, ps);
-            ps.setLong(5, entity.getId());
-            ps.executeUpdate();
+        UpdateShape shape = updateShape(entity);
+        if (shape.columns().isEmpty()) {
+            return;
+        }
+        String sql = updateSql(shape);
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            PreparedStatement ps = lease.getStatements().prepare(sql);
+            bindUpdate(entity, shape, ps);
+            int rows = ps.executeUpdate();
+            succeeded(sql, start, rows);
+            if (shape.versioned() && rows == 0) {
+                throw staleEntities(List.of(entity));
+            }
+            updated(entity);
+        } catch (SQLException e) {
+            throw failed(sql, start, e);
+        } finally {
+            invalidate(entity.getId());
+        }
+    }
+
+    public void updateAll(Collection<T> entities) {
+        updateAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Updates the entities in batches of up to batchSize rows. Entities are grouped by the
+     * set of columns they changed, with one PreparedStatement per group, and entities with
+     * no changes are skipped. Version checks work as in update; the batch that finds stale
+     * entities still applies to the others, and then OptimisticLockException stops the rest.
+     */
+    public void updateAll(Collection<T> entities, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1 but was " + batchSize);
+        }
+        Map<UpdateShape, List<T>> byShape = new LinkedHashMap<>();
+        for (T entity : entities) {
+            UpdateShape shape = updateShape(entity);
+            if (!shape.columns().isEmpty()) {
+                byShape.computeIfAbsent(shape, key -> new ArrayList<>()).add(entity);
+            }
+        }
+        String sql = getUpdateSql();
+        long start = System.nanoTime();
+        try (ConnectionLease lease = acquire()) {
+            for (Map.Entry<UpdateShape, List<T>> group : byShape.entrySet()) {
+                UpdateShape shape = group.getKey();
+                sql = updateSql(shape);
+                start = System.nanoTime();
+                PreparedStatement ps = lease.getStatements().prepare(sql);
+                List<T> batch = new ArrayList<>(Math.min(batchSize, group.getValue().size()));
+                try {
+                    for (T entity : group.getValue()) {
+                        bindUpdate(entity, shape, ps);
+                        ps.addBatch();
+                        batch.add(entity);
+                        if (batch.size() == batchSize) {
+                            executeUpdateBatch(ps, shape, batch, sql, start);
+                            batch.clear();
+                            start = System.nanoTime();
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        executeUpdateBatch(ps, shape, batch, sql, start);
+                    }
+                } catch (SQLException e) {
+                    ps.clearBatch();
+                    throw e;
+                }
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw failed(sql, start, e);
+        } finally {
+            entities.forEach(entity -> invalidate(entity.getId()));
         }
     }
 
+    private void executeUpdateBatch(PreparedStatement ps, UpdateShape shape, List<T> batch, String sql, long start)
+            throws SQLException {
+        int[] counts = ps.executeBatch();
+        long rows = 0;
+        List<T> stale = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            rows += Math.max(counts[i], 0);
+            if (shape.versioned() && counts[i] == 0) {
+                stale.add(batch.get(i));
+            } else {
+                updated(batch.get(i));
+            }
+        }
+        succeeded(sql, start, rows);
+        if (!stale.isEmpty()) {
+            throw staleEntities(stale);
+        }
+    }
+
+    private void updated(T entity) {
+        restoreOnRollback(entity);
+        if (entity.getVersion() != null) {
+            entity.setVersion(entity.getVersion() + 1);
+        }
+        entity.clearChangedProperties();
+        notifyListeners(entityListener -> entityListener.onUpdated(entity));
+    }
+
+    private static OptimisticLockException staleEntities(List<? extends Entity> stale) {
+        return new OptimisticLockException("Changed or deleted since they were loaded: " + stale.stream()
+                .map(entity -> "ID %d at version %d".formatted(entity.getId(), entity.getVersion()))
+                .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * The columns an update writes and whether it checks the row's version; entities with
+     * the same shape share one UPDATE statement.
+     */
+    private record UpdateShape(List<String> columns, boolean versioned) {}
+
+    private UpdateShape updateShape(T entity) {
+        Set<String> changed = entity.getChangedProperties();
+        Map<String, String> updateColumns = getUpdateColumns();
+        List<String> columns = new ArrayList<>(updateColumns.size());
+        for (Map.Entry<String, String> column : updateColumns.entrySet()) {
+            if (changed == null || changed.contains(column.getKey())) {
+                columns.add(column.getValue());
+            }
+        }
+        return new UpdateShape(columns, entity.getVersion() != null);
+    }
+
+    /**
+     * Starts from getUpdateSql() when every column changed and otherwise builds, once per
+     * column set, an UPDATE of just those columns. A versioned update also matches on
+     * VERSION. A table has few enough column combinations that the generated statements
+     * stay in the statement cache.
+     */
+    private String updateSql(UpdateShape shape) {
+        String sql = updateSql.get(shape);
+        if (sql == null) {
+            sql = shape.columns().size() == getUpdateColumns().size()
+                    ? getUpdateSql()
+                    : "UPDATE %s SET %s, VERSION=VERSION+1 WHERE ID=?".formatted(getTableName(),
+                            shape.columns().stream().map(column -> column + "=?").collect(Collectors.joining(", ")));
+            if (shape.versioned()) {
+                sql += " AND VERSION=?";
+            }
+            updateSql.putIfAbsent(shape, sql);
+        }
+        return sql;
+    }
+
+    private void bindUpdate(T entity, UpdateShape shape, PreparedStatement ps) throws SQLException {
+        List<String> columns = shape.columns();
+        for (int i = 0; i < columns.size(); i++) {
+            bindUpdateColumn(entity, columns.get(i), ps, i + 1);
+        }
+        ps.setLong(columns.size() + 1, entity.getId());
+        if (shape.versioned()) {
+            ps.setLong(columns.size() + 2, entity.getVersion());
+        }
+    }
+
+    /**
+     * @return The full UPDATE statement: every column of getUpdateColumns() in order, then
+     * "VERSION=VERSION+1 WHERE ID=?".
+     */
     protected abstract String getUpdateSql();
 
-    abstract void mapForUpdate(T entity, PreparedStatement ps) throws SQLException;
-//        ps.setString(1, entity.getFirstName());
-//        ps.setString(2, entity.getLastName());
-//        ps.setTimestamp(3, convertDobToTimestamp(entity.getDob()));
-//        ps.setBigDecimal(4, entity.getSalary());
-//    }
+    protected abstract String getTableName();
+
+    /**
+     * @return The columns update can write, keyed by the entity property each one holds,
+     * in the order getUpdateSql() lists them.
+     */
+    protected abstract Map<String, String> getUpdateColumns();
+
+    abstract void bindUpdateColumn(T entity, String column, PreparedStatement ps, int index) throws SQLException;
 
     /**
      *
@@ -128,10 +1097,30 @@ abstract class CRUDRepository<T extends Entity> {
 
     protected abstract String getCountSql();
 
+    /**
+     * @return A SQL string that selects every column extractEntityFromResultSet reads
+     * from the table and nothing more, i.e. "SELECT ... FROM table" with no WHERE, ORDER BY
+     * or LIMIT. findPage and findAllById append their own clauses to it.
+     */
     protected abstract String getFindAllSql();
 
     abstract T extractEntityFromResultSet(ResultSet rs) throws SQLException;
 
+    /**
+     * Returns a separate entity with the same properties, ID, version and changed
+     * properties, for writers that need a snapshot of an entity its owner may keep changing.
+     */
+    abstract T copy(T entity);
+
+    /**
+     * Returns the mapper used for queries that read many rows. The default maps each row
+     * through extractEntityFromResultSet; override it to resolve column indexes once per
+     * ResultSet instead of looking columns up by label on every row.
+     */
+    RowMapper<T> rowMapper(ResultSet rs) throws SQLException {
+        return this::extractEntityFromResultSet;
+    }
+
     /**
      *
      * @return Returns a String that represents the SQL needed to retrieve one entity.
@@ -0,0 +1,14 @@
+package com.sitg.peopledb.repository;
+
+import java.util.List;
+
+/**
+ * Changes read from a change feed, oldest first: the current state of the entities saved
+ * or updated, and the IDs of the ones deleted. watermark is the position to read on from,
+ * and hasMore says whether there were already more changes past it.
+ */
+public record ChangeBatch<T>(List<T> changed, List<Long> deletedIds, long watermark, boolean hasMore) {
+    public boolean isEmpty() {
+        return changed.isEmpty() && deletedIds.isEmpty();
+    }
+}
@@ -0,0 +1,24 @@
+package com.sitg.peopledb.repository;
+
+import java.sql.Connection;
+
+/**
+ * A connection borrowed for one repository operation, along with the statement cache
+ * that belongs to it. Closing the lease hands the connection back; it doesn't close it.
+ */
+public interface ConnectionLease extends AutoCloseable {
+    Connection getConnection();
+
+    StatementCache getStatements();
+
+    /**
+     * Marks the connection as unfit for reuse, for when it's been left in a state that
+     * couldn't be reset. Closing the lease then closes the connection instead of handing it
+     * back. Leases that don't own their connection ignore this.
+     */
+    default void retire() {
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,271 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.exception.UnableToAcquireConnectionException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small, fixed-maximum pool of JDBC connections that lets one repository be shared
+ * between threads. Each pooled connection keeps its own StatementCache.
+ * Connections that sit idle longer than idleTimeout are closed the next time the pool
+ * is used, or when evictIdle() is called. A connection that fails to close while another
+ * caller is acquiring is only counted in getCloseFailureCount, since that caller's own
+ * connection is fine; evictIdle and close throw the failures they run into.
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private long returnedAt;
+
+        private PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize);
+        }
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private StatementCacheStats retiredStats = StatementCacheStats.EMPTY;
+    private long closeFailures;
+    private boolean closed;
+
+    public ConnectionPool(String url, int maxSize) {
+        this(() -> DriverManager.getConnection(url), maxSize, DEFAULT_ACQUIRE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, Duration acquireTimeout, Duration idleTimeout) {
+        this(factory, maxSize, acquireTimeout, idleTimeout, StatementCache.DEFAULT_MAX_SIZE);
+    }
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, Duration acquireTimeout, Duration idleTimeout,
+                          int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but was " + maxSize);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Override
+    public ConnectionLease acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new UnableToAcquireConnectionException(
+                        "Timed out after %d ms waiting for one of %d connections"
+                                .formatted(TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos), maxSize));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToAcquireConnectionException("Interrupted while waiting for a connection");
+        }
+        try {
+            return new Lease(takeOrCreate());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeOrCreate() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                throw new UnableToAcquireConnectionException("Connection pool is closed");
+            }
+            evictExpired();  // any failure is counted in retire; it isn't this caller's problem
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (!pooled.connection.isClosed()) {
+                    return pooled;
+                }
+                retire(pooled);  // closing a closed connection does nothing, so this can't fail
+            }
+        }
+        PooledConnection created = new PooledConnection(factory.create(), statementCacheSize);
+        synchronized (this) {
+            all.add(created);
+        }
+        return created;
+    }
+
+    private void release(PooledConnection pooled, boolean retired) {
+        SQLException failure = null;
+        try {
+            synchronized (this) {
+                if (closed || retired) {
+                    failure = retire(pooled);
+                } else {
+                    pooled.returnedAt = System.nanoTime();
+                    idle.addFirst(pooled);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+        throwIfFailed(failure);
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout.
+     * The most recently returned connections are reused first, so the ones at the
+     * end of the idle queue are always the oldest. If any of them fails to close, the
+     * rest are still closed and the failure is thrown.
+     */
+    public synchronized int evictIdle() {
+        int before = idle.size();
+        SQLException failure = evictExpired();
+        int evicted = before - idle.size();
+        throwIfFailed(failure);
+        return evicted;
+    }
+
+    private SQLException evictExpired() {
+        long now = System.nanoTime();
+        SQLException failure = null;
+        PooledConnection oldest;
+        while ((oldest = idle.peekLast()) != null && now - oldest.returnedAt >= idleTimeoutNanos) {
+            idle.pollLast();
+            failure = addFailure(failure, retire(oldest));
+        }
+        return failure;
+    }
+
+    /**
+     * Drops the connection from the pool and closes it, which also closes its cached
+     * statements. Returns the failure to close it, if any, for the caller to throw once
+     * it's done retiring.
+     */
+    private SQLException retire(PooledConnection pooled) {
+        all.remove(pooled);
+        retiredStats = retiredStats.plus(pooled.statements.getStats());
+        try {
+            pooled.connection.close();
+            return null;
+        } catch (SQLException e) {
+            closeFailures++;
+            return e;
+        }
+    }
+
+    private static SQLException addFailure(SQLException failure, SQLException next) {
+        if (failure == null) {
+            return next;
+        }
+        if (next != null) {
+            failure.addSuppressed(next);
+        }
+        return failure;
+    }
+
+    private static void throwIfFailed(SQLException failure) {
+        if (failure != null) {
+            throw new DataAccessException("Unable to close pooled connection", failure);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getOpenCount() {
+        return all.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /** How many pooled connections have failed to close, whether or not anyone saw the failure. */
+    public synchronized long getCloseFailureCount() {
+        return closeFailures;
+    }
+
+    public synchronized int getActiveCount() {
+        return all.size() - idle.size();
+    }
+
+    @Override
+    public synchronized StatementCacheStats getStatementCacheStats() {
+        StatementCacheStats stats = retiredStats;
+        for (PooledConnection pooled : all) {
+            stats = stats.plus(pooled.statements.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Closes the idle connections right away. Connections that are still leased are
+     * closed when they're returned.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        SQLException failure = null;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            failure = addFailure(failure, retire(pooled));
+        }
+        throwIfFailed(failure);
+    }
+
+    private class Lease implements ConnectionLease {
+        private final PooledConnection pooled;
+        private boolean released;
+        private boolean retired;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return pooled.connection;
+        }
+
+        @Override
+        public StatementCache getStatements() {
+            return pooled.statements;
+        }
+
+        @Override
+        public void retire() {
+            retired = true;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(pooled, retired);
+            }
+        }
+    }
+}
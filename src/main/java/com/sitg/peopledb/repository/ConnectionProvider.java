@@ -0,0 +1,9 @@
+package com.sitg.peopledb.repository;
+
+import java.sql.SQLException;
+
+public interface ConnectionProvider {
+    ConnectionLease acquire() throws SQLException;
+
+    StatementCacheStats getStatementCacheStats();
+}
@@ -0,0 +1,132 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a query's ResultSet one row at a time, mapping each row only when it's asked for.
+ * The cursor owns its statement, result set and connection lease and releases all of them
+ * when it's closed or runs out of rows. The listener hears about the query once, on close,
+ * with the rows read and the time from opening to closing, or with the error that ended
+ * it. A failure to close is reported too, and thrown if nothing had failed before.
+ */
+public class Cursor<T> implements Iterator<T>, AutoCloseable {
+    private final ConnectionLease lease;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final RowMapper<T> mapper;
+    private final String sql;
+    private final RepositoryListener listener;
+    private final long openedAt = System.nanoTime();
+    private long rows;
+    private SQLException error;
+    private boolean fetched;
+    private boolean hasRow;
+    private boolean closed;
+
+    Cursor(ConnectionLease lease, String sql, int fetchSize, RowMapper.Factory<T> mappers,
+           RepositoryListener listener) throws SQLException {
+        this.lease = lease;
+        this.sql = sql;
+        this.listener = listener;
+        PreparedStatement statement = null;
+        try {
+            statement = lease.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            this.rs = statement.executeQuery();
+            this.ps = statement;
+            this.mapper = mappers.forResultSet(rs);
+        } catch (SQLException | RuntimeException e) {
+            if (statement != null) {
+                statement.close();  // also closes the result set if it was opened
+            }
+            lease.close();
+            if (e instanceof SQLException sqlException) {
+                listener.onError(sql, System.nanoTime() - openedAt, sqlException);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                hasRow = rs.next();
+            } catch (SQLException e) {
+                error = e;
+                close();
+                throw new DataAccessException("Unable to read next row", e);
+            }
+            fetched = true;
+            if (!hasRow) {
+                close();
+            }
+        }
+        return hasRow;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            T entity = mapper.map(rs);
+            rows++;
+            return entity;
+        } catch (SQLException e) {
+            error = e;
+            close();
+            throw new DataAccessException("Unable to map row", e);
+        }
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        SQLException closeFailure = null;
+        try (lease; ps; rs) {
+            // closes the result set, then the statement, then hands back the connection
+        } catch (SQLException e) {
+            closeFailure = e;
+        }
+        long elapsed = System.nanoTime() - openedAt;
+        if (error != null) {
+            if (closeFailure != null) {
+                error.addSuppressed(closeFailure);
+            }
+            listener.onError(sql, elapsed, error);
+        } else if (closeFailure != null) {
+            listener.onError(sql, elapsed, closeFailure);
+            throw new DataAccessException("Unable to close cursor for: " + sql, closeFailure);
+        } else {
+            listener.onSuccess(sql, elapsed, rows);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A bounded LRU cache of entities keyed by ID, with an optional time-to-live and
+ * optional caching of IDs that weren't found. get returns the cached instance itself, so
+ * the repository hands each caller a copy and keeps the cached one to itself.
+ */
+public class EntityCache<T extends Entity> {
+    private record Entry<T>(T entity, long expiresAt) {}
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final boolean cacheMisses;
+    private final LinkedHashMap<Long, Entry<T>> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loads;
+    private long totalLoadNanos;
+    private long invalidations;
+
+    public EntityCache(int maxSize) {
+        this(maxSize, Duration.ZERO, false);
+    }
+
+    /**
+     * @param ttl how long an entry stays valid after it's loaded; Duration.ZERO means forever
+     * @param cacheMisses whether to remember IDs the loader didn't find
+     */
+    public EntityCache(int maxSize, Duration ttl, boolean cacheMisses) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.cacheMisses = cacheMisses;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                if (size() <= EntityCache.this.maxSize) {
+                    return false;
+                }
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached entity for the ID, calling the loader on a miss. The loader runs
+     * outside the cache's lock, so two threads missing on the same ID may both load it.
+     */
+    public Optional<T> get(Long id, Function<Long, Optional<T>> loader) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            Entry<T> entry = entries.get(id);
+            if (entry != null && (ttlNanos == 0 || System.nanoTime() - entry.expiresAt < 0)) {
+                hits++;
+                return Optional.ofNullable(entry.entity);
+            }
+            if (entry != null) {
+                entries.remove(id);
+            }
+            misses++;
+            invalidationsBeforeLoad = invalidations;
+        }
+        long start = System.nanoTime();
+        Optional<T> loaded = loader.apply(id);
+        long loadNanos = System.nanoTime() - start;
+        synchronized (this) {
+            loads++;
+            totalLoadNanos += loadNanos;
+            // skip caching if an invalidation raced with the load; the loaded value may be stale
+            if ((loaded.isPresent() || cacheMisses) && invalidations == invalidationsBeforeLoad) {
+                entries.put(id, new Entry<>(loaded.orElse(null), start + loadNanos + ttlNanos));
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate(Long id) {
+        invalidations++;
+        entries.remove(id);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized EntityCacheStats getStats() {
+        return new EntityCacheStats(hits, misses, evictions, loads, totalLoadNanos, entries.size());
+    }
+}
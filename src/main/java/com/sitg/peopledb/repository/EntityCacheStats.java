@@ -0,0 +1,12 @@
+package com.sitg.peopledb.repository;
+
+public record EntityCacheStats(long hits, long misses, long evictions, long loads, long totalLoadNanos, int size) {
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public double averageLoadNanos() {
+        return loads == 0 ? 0 : (double) totalLoadNanos / loads;
+    }
+}
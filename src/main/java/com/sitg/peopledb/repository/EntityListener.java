@@ -0,0 +1,23 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+/**
+ * Told about every entity a repository writes, after the write succeeds. Inside
+ * runInTransaction the calls wait until the transaction commits and are dropped if it
+ * rolls back. Called on the writing thread, so implementations should be cheap and
+ * thread-safe.
+ */
+public interface EntityListener<T extends Entity> {
+    default void onSaved(T entity) {
+    }
+
+    /**
+     * Only called for entities that had changes to write.
+     */
+    default void onUpdated(T entity) {
+    }
+
+    default void onDeleted(Long id) {
+    }
+}
@@ -0,0 +1,262 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs small transactions from many threads together, so that one physical commit covers
+ * a whole group of them. A background thread takes whatever units of work are waiting, up
+ * to maxGroupSize, runs each in its own savepoint of one repository transaction and
+ * commits once. Callers block until the commit covering their unit is done. Groups form
+ * on their own under load: units that arrive while one group commits wait for the next.
+ * <p>
+ * A unit that throws is rolled back to its savepoint and its exception goes back to its
+ * caller; the rest of the group still commits. A unit that failed on a lock conflict is
+ * run again in the next group, once this group's commit has let go of its locks, up to
+ * CRUDRepository.DEFAULT_TRANSACTION_ATTEMPTS times in all, so work must be safe to
+ * repeat. If the commit itself fails, after the repository's retries on lock conflicts,
+ * every unit in the group fails with that exception. Units run on the committer thread,
+ * so only operations on this repository take part in the transaction, and work must not
+ * wait on other units.
+ * <p>
+ * The repository should sit on a ConnectionPool with auto-commit on, as for inTransaction.
+ * This is not a way to make writes faster here. Grouping can only pay off where each
+ * commit waits for the disk, and none of the databases PeopleDatabase opens do: embedded
+ * H2 doesn't sync on commit, so the hand-off to the committer thread costs more than it
+ * saves. TransactionBenchmark shows about half the throughput of plain auto-commit. Use
+ * it for its semantics, many callers sharing a commit and seeing its outcome, or behind a
+ * ConnectionFactory for a database whose commits are durable, after measuring there.
+ */
+public class GroupCommitter<T extends Entity> implements AutoCloseable {
+    public static final int DEFAULT_MAX_GROUP_SIZE = 64;
+
+    private final CRUDRepository<T> repository;
+    private final int maxGroupSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Deque<Unit<?>> queue = new ArrayDeque<>();
+    private final Thread committer;
+    private boolean closed;
+    private long commits;
+    private long transactions;
+
+    public GroupCommitter(CRUDRepository<T> repository) {
+        this(repository, DEFAULT_MAX_GROUP_SIZE);
+    }
+
+    public GroupCommitter(CRUDRepository<T> repository, int maxGroupSize) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be at least 1 but was " + maxGroupSize);
+        }
+        this.repository = repository;
+        this.maxGroupSize = maxGroupSize;
+        this.committer = new Thread(this::runCommitter, "group-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Runs work in the next group and returns its result once the group has committed.
+     * An exception from work, or from the commit, is rethrown here.
+     */
+    public <R> R inTransaction(Supplier<R> work) {
+        try {
+            return submit(work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void inTransaction(Runnable work) {
+        inTransaction(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Queues work for the next group without waiting. The future completes once the group
+     * has committed, or with the exception from work or from the commit.
+     */
+    public <R> CompletableFuture<R> submit(Supplier<R> work) {
+        Unit<R> unit = new Unit<>(work);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Group committer is closed");
+            }
+            queue.add(unit);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return unit.result;
+    }
+
+    private void runCommitter() {
+        List<Unit<?>> group;
+        while (!(group = nextGroup()).isEmpty()) {
+            commit(group);
+        }
+    }
+
+    /**
+     * Waits for work and takes up to maxGroupSize units, or returns nothing once the
+     * committer is closed and the queue is empty.
+     */
+    private List<Unit<?>> nextGroup() {
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !closed) {
+                notEmpty.awaitUninterruptibly();
+            }
+            List<Unit<?>> group = new ArrayList<>(Math.min(queue.size(), maxGroupSize));
+            while (!queue.isEmpty() && group.size() < maxGroupSize) {
+                group.add(queue.remove());
+            }
+            return group;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commit(List<Unit<?>> group) {
+        RuntimeException failure = null;
+        try {
+            repository.inTransaction(() -> group.forEach(unit -> unit.run(repository)));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        List<Unit<?>> retries = new ArrayList<>();
+        lock.lock();
+        try {
+            if (failure == null) {
+                for (Unit<?> unit : group) {
+                    if (unit.shouldRetry()) {
+                        retries.add(unit);
+                    }
+                }
+                commits++;
+                transactions += group.size() - retries.size();
+                for (int i = retries.size() - 1; i >= 0; i--) {
+                    queue.addFirst(retries.get(i));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Unit<?> unit : group) {
+            if (!retries.contains(unit)) {
+                unit.complete(failure);
+            }
+        }
+    }
+
+    public int getMaxGroupSize() {
+        return maxGroupSize;
+    }
+
+    /** The number of physical commits made. */
+    public long getCommitCount() {
+        lock.lock();
+        try {
+            return commits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of units of work covered by those commits, including any rolled back to
+     * their savepoints but not those put back to run again.
+     */
+    public long getTransactionCount() {
+        lock.lock();
+        try {
+            return transactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting work, commits what's queued and stops the background thread.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One caller's work and its outcome in the current attempt at the group's transaction.
+     * The outcome is reset each time the repository retries the group; runs counts the
+     * groups the unit has been run in.
+     */
+    private static final class Unit<R> {
+        private final Supplier<R> work;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private R value;
+        private RuntimeException failure;
+        private int runs = 1;
+
+        Unit(Supplier<R> work) {
+            this.work = work;
+        }
+
+        void run(CRUDRepository<?> repository) {
+            try {
+                value = repository.inTransaction(work);
+                failure = null;
+            } catch (RuntimeException e) {
+                value = null;
+                failure = e;
+            }
+        }
+
+        /** Whether the unit lost a lock conflict and may run again, in which case it counts the run. */
+        boolean shouldRetry() {
+            if (failure == null || runs == CRUDRepository.DEFAULT_TRANSACTION_ATTEMPTS
+                    || !CRUDRepository.isLockConflict(failure)) {
+                return false;
+            }
+            runs++;
+            return true;
+        }
+
+        void complete(RuntimeException groupFailure) {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else if (groupFailure != null) {
+                result.completeExceptionally(groupFailure);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.exception.OptimisticLockException;
+import com.sitg.peopledb.model.Person;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A Person read with only some of its properties. The first time a missing one is read,
+ * the rest of the row is fetched by ID in one query. Setting a missing property to
+ * anything but null needs no query. equals and hashCode go by ID, like any Person with
+ * one, so they never query and don't change once the row loads. toString only uses what
+ * has been loaded so far, so a missing property shows as null there. Like Person, it
+ * isn't thread-safe.
+ */
+final class LazyPerson extends Person {
+    private final PeopleRepository repository;
+    /** Properties not fetched yet; empty once the row is complete. */
+    private final Set<String> missing;
+
+    LazyPerson(PeopleRepository repository, long id, String firstName, String lastName, ZonedDateTime dob,
+               BigDecimal salary, long version, Set<String> missing) {
+        super(id, firstName, lastName, dob, salary);
+        this.repository = repository;
+        this.missing = new HashSet<>(missing);
+        setVersion(version);
+        clearChangedProperties();
+    }
+
+    private void load(String property) {
+        if (!missing.contains(property)) {
+            return;
+        }
+        Person row = repository.findRowById(getId())
+                .orElseThrow(() -> new DataAccessException("Person " + getId() + " was deleted before it was fully loaded"));
+        if (!row.getVersion().equals(getVersion())) {
+            throw new OptimisticLockException("Person %d changed from version %d to %d before it was fully loaded"
+                    .formatted(getId(), getVersion(), row.getVersion()));
+        }
+        fillIn(row, missing);
+        missing.clear();
+    }
+
+    /**
+     * A missing property reads as null until loaded, so setting it to null wouldn't be seen
+     * as a change; load it first. Any other value counts as a change and needs no query.
+     */
+    private void beforeSet(String property, Object value) {
+        if (value == null) {
+            load(property);
+        } else {
+            missing.remove(property);
+        }
+    }
+
+    @Override
+    public String getFirstName() {
+        load("firstName");
+        return super.getFirstName();
+    }
+
+    @Override
+    public void setFirstName(String firstName) {
+        beforeSet("firstName", firstName);
+        super.setFirstName(firstName);
+    }
+
+    @Override
+    public String getLastName() {
+        load("lastName");
+        return super.getLastName();
+    }
+
+    @Override
+    public void setLastName(String lastName) {
+        beforeSet("lastName", lastName);
+        super.setLastName(lastName);
+    }
+
+    @Override
+    public ZonedDateTime getDob() {
+        load("dob");
+        return super.getDob();
+    }
+
+    @Override
+    public void setDob(ZonedDateTime dob) {
+        beforeSet("dob", dob);
+        super.setDob(dob);
+    }
+
+    @Override
+    public BigDecimal getSalary() {
+        load("salary");
+        return super.getSalary();
+    }
+
+    @Override
+    public void setSalary(BigDecimal salary) {
+        beforeSet("salary", salary);
+        super.setSalary(salary);
+    }
+}
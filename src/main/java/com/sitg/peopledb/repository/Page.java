@@ -0,0 +1,13 @@
+package com.sitg.peopledb.repository;
+
+import java.util.List;
+
+/**
+ * One page of a keyset query. next is the token to pass back in for the following page,
+ * or null when this is the last one.
+ */
+public record Page<T>(List<T> items, PageToken next) {
+    public boolean hasNext() {
+        return next != null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.sitg.peopledb.repository;
+
+/**
+ * Where the next page starts: after the row with this sort value and ID.
+ * sortValue is null for pages ordered by ID alone.
+ */
+public record PageToken(Object sortValue, long afterId) {
+    public static PageToken afterId(long id) {
+        return new PageToken(null, id);
+    }
+}
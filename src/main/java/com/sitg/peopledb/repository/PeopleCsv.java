@@ -0,0 +1,404 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.UnableToExportException;
+import com.sitg.peopledb.exception.UnableToImportException;
+import com.sitg.peopledb.model.Person;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk loads PEOPLE from CSV files and writes the table back out, streaming in both
+ * directions so heap use depends on the buffer and chunk sizes, not on the file size.
+ * <p>
+ * Records are one per line: FIRST_NAME,LAST_NAME,DOB,SALARY, with an optional header
+ * line. Names may be quoted, with "" for a literal quote. DOB is an ISO-8601 date or
+ * date-time with an optional offset (UTC when missing), and SALARY a plain decimal
+ * (0 when empty, like the column's default). An empty name or DOB field is NULL and a
+ * quoted empty name ("") is the empty string, so NULLs survive an export and re-import.
+ * Import parses fields straight out of the read buffer and inserts them through saveAll,
+ * one transaction per chunk; chunks committed before a failure stay committed.
+ */
+public class PeopleCsv {
+    public static final String HEADER = "FIRST_NAME,LAST_NAME,DOB,SALARY";
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final int FIELDS = 4;
+
+    private final PeopleRepository repository;
+    private final int chunkSize;
+
+    public PeopleCsv(PeopleRepository repository) {
+        this(repository, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PeopleCsv(PeopleRepository repository, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1 but was " + chunkSize);
+        }
+        this.repository = repository;
+        this.chunkSize = chunkSize;
+    }
+
+    public TransferResult importFrom(Path file) {
+        long start = System.nanoTime();
+        LineParser parser = new LineParser();
+        List<Person> chunk = new ArrayList<>(chunkSize);
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        Person person = parser.parse(bytes, lineStart, i);
+                        lineStart = i + 1;
+                        if (person != null) {
+                            chunk.add(person);
+                            if (chunk.size() == chunkSize) {
+                                rows += saveChunk(chunk);
+                            }
+                        }
+                    }
+                }
+                if (endOfFile) {
+                    Person person = parser.parse(bytes, lineStart, limit);
+                    if (person != null) {
+                        chunk.add(person);
+                    }
+                } else if (lineStart == 0 && limit == bytes.length) {
+                    throw new UnableToImportException("Line %d of %s is longer than %d bytes"
+                            .formatted(parser.lineNumber + 1, file, BUFFER_SIZE));
+                } else {
+                    System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                    buffer.position(limit - lineStart);
+                }
+            }
+            rows += saveChunk(chunk);
+        } catch (IOException e) {
+            throw new UnableToImportException("Unable to read " + file, e);
+        }
+        return new TransferResult(rows, System.nanoTime() - start);
+    }
+
+    private int saveChunk(List<Person> chunk) {
+        int size = chunk.size();
+        if (size > 0) {
+            repository.runInTransaction(() -> repository.saveAll(chunk, size));
+            chunk.clear();
+        }
+        return size;
+    }
+
+    /**
+     * Writes every row of PEOPLE to file, header first, reading through a cursor so only
+     * one row is held at a time.
+     */
+    public TransferResult exportTo(Path file) {
+        long start = System.nanoTime();
+        long rows = 0;
+        StringBuilder line = new StringBuilder(128);
+        try (Cursor<Person> cursor = repository.openCursor();
+             Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            while (cursor.hasNext()) {
+                Person person = cursor.next();
+                line.setLength(0);
+                appendName(line, person.getFirstName()).append(',');
+                appendName(line, person.getLastName()).append(',');
+                appendDob(line, person.getDob()).append(',');
+                if (person.getSalary() != null) {
+                    line.append(person.getSalary().toPlainString());
+                }
+                line.append('\n');
+                out.append(line);
+                rows++;
+            }
+        } catch (IOException e) {
+            throw new UnableToExportException("Unable to write " + file, e);
+        }
+        return new TransferResult(rows, System.nanoTime() - start);
+    }
+
+    private static StringBuilder appendName(StringBuilder line, String name) {
+        if (name == null) {
+            return line;
+        }
+        boolean quote = name.isEmpty();
+        for (int i = 0; i < name.length() && !quote; i++) {
+            char c = name.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(name);
+        }
+        line.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\n' || c == '\r') {
+                throw new UnableToExportException("Names with line breaks can't be exported: " + name);
+            }
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    /** Appends the DOB in UTC as yyyy-MM-ddTHH:mm:ss[.nnnnnnnnn]Z. */
+    private static StringBuilder appendDob(StringBuilder line, ZonedDateTime dob) {
+        if (dob == null) {
+            return line;
+        }
+        LocalDateTime utc = LocalDateTime.ofEpochSecond(dob.toEpochSecond(), dob.getNano(), ZoneOffset.UTC);
+        appendPadded(line, utc.getYear(), 4).append('-');
+        appendPadded(line, utc.getMonthValue(), 2).append('-');
+        appendPadded(line, utc.getDayOfMonth(), 2).append('T');
+        appendPadded(line, utc.getHour(), 2).append(':');
+        appendPadded(line, utc.getMinute(), 2).append(':');
+        appendPadded(line, utc.getSecond(), 2);
+        if (utc.getNano() != 0) {
+            appendPadded(line.append('.'), utc.getNano(), 9);
+        }
+        return line.append('Z');
+    }
+
+    private static StringBuilder appendPadded(StringBuilder line, int value, int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                line.append('0');
+            }
+        }
+        return line.append(value);
+    }
+
+    /**
+     * Parses one line at a time out of the read buffer. Field boundaries go into reused
+     * arrays, so the only objects created per line are the ones the Person holds.
+     */
+    private static class LineParser {
+        private final int[] starts = new int[FIELDS];
+        private final int[] ends = new int[FIELDS];
+        private final boolean[] quoted = new boolean[FIELDS];
+        private byte[] scratch = new byte[256];
+        private long lineNumber;
+
+        /** Returns the Person on the line, or null for a blank or header line. */
+        Person parse(byte[] bytes, int from, int to) {
+            lineNumber++;
+            if (to > from && bytes[to - 1] == '\r') {
+                to--;
+            }
+            if (lineNumber == 1 && to - from >= 3 && bytes[from] == (byte) 0xEF
+                    && bytes[from + 1] == (byte) 0xBB && bytes[from + 2] == (byte) 0xBF) {
+                from += 3;  // UTF-8 byte order mark
+            }
+            if (from == to || lineNumber == 1 && isHeader(bytes, from, to)) {
+                return null;
+            }
+            try {
+                splitFields(bytes, from, to);
+                Person person = new Person(text(bytes, 0), text(bytes, 1), dob(bytes, starts[2], ends[2]));
+                person.setSalary(salary(bytes, starts[3], ends[3]));
+                return person;
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new UnableToImportException("Line %d: %s".formatted(lineNumber, e.getMessage()), e);
+            }
+        }
+
+        private static boolean isHeader(byte[] bytes, int from, int to) {
+            if (to - from != HEADER.length()) {
+                return false;
+            }
+            for (int i = 0; i < HEADER.length(); i++) {
+                if (Character.toUpperCase(bytes[from + i]) != HEADER.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void splitFields(byte[] bytes, int from, int to) {
+            int field = 0;
+            int i = from;
+            while (true) {
+                if (field == FIELDS) {
+                    throw new IllegalArgumentException("expected %d fields but found more".formatted(FIELDS));
+                }
+                if (i < to && bytes[i] == '"') {
+                    int j = i + 1;
+                    while (j < to && (bytes[j] != '"' || j + 1 < to && bytes[j + 1] == '"')) {
+                        j += bytes[j] == '"' ? 2 : 1;
+                    }
+                    if (j >= to) {
+                        throw new IllegalArgumentException("unterminated quote in field " + (field + 1));
+                    }
+                    quoted[field] = true;
+                    starts[field] = i + 1;
+                    ends[field] = j;
+                    i = j + 1;
+                    if (i < to && bytes[i] != ',') {
+                        throw new IllegalArgumentException("unexpected text after quoted field " + (field + 1));
+                    }
+                } else {
+                    int j = i;
+                    while (j < to && bytes[j] != ',') {
+                        j++;
+                    }
+                    quoted[field] = false;
+                    starts[field] = i;
+                    ends[field] = j;
+                    i = j;
+                }
+                field++;
+                if (i >= to) {
+                    break;
+                }
+                i++;
+            }
+            if (field != FIELDS) {
+                throw new IllegalArgumentException("expected %d fields but found %d".formatted(FIELDS, field));
+            }
+        }
+
+        private String text(byte[] bytes, int field) {
+            int from = starts[field];
+            int to = ends[field];
+            if (!quoted[field]) {
+                return from == to ? null : new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            }
+            if (scratch.length < to - from) {
+                scratch = new byte[to - from];
+            }
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                scratch[length++] = bytes[i];
+                if (bytes[i] == '"') {
+                    i++;  // the second quote of an escaped pair
+                }
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private static ZonedDateTime dob(byte[] bytes, int from, int to) {
+            if (from == to) {
+                return null;
+            }
+            if (to - from < 10 || bytes[from + 4] != '-' || bytes[from + 7] != '-') {
+                throw new IllegalArgumentException("DOB must start with yyyy-MM-dd");
+            }
+            int year = digits(bytes, from, 4);
+            int month = digits(bytes, from + 5, 2);
+            int day = digits(bytes, from + 8, 2);
+            int hour = 0;
+            int minute = 0;
+            int second = 0;
+            int nanos = 0;
+            int i = from + 10;
+            if (i < to && (bytes[i] == 'T' || bytes[i] == ' ')) {
+                if (to - i < 6 || bytes[i + 3] != ':') {
+                    throw new IllegalArgumentException("DOB time must be HH:mm[:ss[.fraction]]");
+                }
+                hour = digits(bytes, i + 1, 2);
+                minute = digits(bytes, i + 4, 2);
+                i += 6;
+                if (i < to && bytes[i] == ':' && to - i >= 3) {
+                    second = digits(bytes, i + 1, 2);
+                    i += 3;
+                    if (i < to && bytes[i] == '.') {
+                        int fractionDigits = 0;
+                        for (i++; i < to && isDigit(bytes[i]); i++) {
+                            nanos = nanos * 10 + (bytes[i] - '0');
+                            fractionDigits++;
+                        }
+                        if (fractionDigits == 0 || fractionDigits > 9) {
+                            throw new IllegalArgumentException("DOB fraction must have 1 to 9 digits");
+                        }
+                        for (; fractionDigits < 9; fractionDigits++) {
+                            nanos *= 10;
+                        }
+                    }
+                }
+            }
+            ZoneOffset offset = ZoneOffset.UTC;
+            if (i < to) {
+                if (bytes[i] == 'Z' && i + 1 == to) {
+                    i++;
+                } else if ((bytes[i] == '+' || bytes[i] == '-') && (to - i == 3 || to - i == 6 && bytes[i + 3] == ':')) {
+                    int seconds = digits(bytes, i + 1, 2) * 3600 + (to - i == 6 ? digits(bytes, i + 4, 2) * 60 : 0);
+                    offset = ZoneOffset.ofTotalSeconds(bytes[i] == '-' ? -seconds : seconds);
+                    i = to;
+                } else {
+                    throw new IllegalArgumentException("DOB offset must be Z, +HH or +HH:mm");
+                }
+            }
+            return ZonedDateTime.of(year, month, day, hour, minute, second, nanos, offset);
+        }
+
+        private static BigDecimal salary(byte[] bytes, int from, int to) {
+            if (from == to) {
+                return BigDecimal.ZERO;
+            }
+            boolean negative = bytes[from] == '-';
+            int i = negative ? from + 1 : from;
+            if (to - i > 18) {
+                return new BigDecimal(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+            }
+            long unscaled = 0;
+            int scale = -1;
+            int digitCount = 0;
+            for (; i < to; i++) {
+                byte b = bytes[i];
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                } else if (isDigit(b)) {
+                    unscaled = unscaled * 10 + (b - '0');
+                    digitCount++;
+                    if (scale >= 0) {
+                        scale++;
+                    }
+                } else {
+                    throw new IllegalArgumentException("SALARY must be a plain decimal number");
+                }
+            }
+            if (digitCount == 0) {
+                throw new IllegalArgumentException("SALARY must be a plain decimal number");
+            }
+            return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+        }
+
+        private static int digits(byte[] bytes, int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                if (!isDigit(bytes[i])) {
+                    throw new IllegalArgumentException("DOB must be made of digits and separators");
+                }
+                value = value * 10 + (bytes[i] - '0');
+            }
+            return value;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+    }
+}
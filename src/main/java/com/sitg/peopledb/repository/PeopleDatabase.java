@@ -0,0 +1,183 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens an embedded H2 database that's ready for PeopleRepository: the schema is created
+ * if it's missing, and an optional snapshot is loaded into an empty PEOPLE table. The
+ * database stays open until close(), which for an in-memory database also discards it.
+ * <p>
+ * A snapshot is either a CSV file in the PeopleCsv format (a name ending in .csv) or an
+ * H2 SQL script written by writeSnapshot, which also restores the indexes as they were.
+ */
+public class PeopleDatabase implements AutoCloseable {
+    public static final int DEFAULT_POOL_SIZE = 8;
+    private static final AtomicInteger UNNAMED = new AtomicInteger();
+
+    private final String url;
+    private final boolean inMemory;
+    private final Connection keepAlive;
+    private final ConnectionPool pool;
+    private final long startupNanos;
+    private boolean closed;
+
+    private PeopleDatabase(String url, boolean inMemory, Path snapshot, int poolSize) {
+        long start = System.nanoTime();
+        this.url = url;
+        this.inMemory = inMemory;
+        try {
+            this.keepAlive = DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to open " + url, e);
+        }
+        this.pool = new ConnectionPool(() -> DriverManager.getConnection(url), poolSize,
+                ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT, ConnectionPool.DEFAULT_IDLE_TIMEOUT);
+        try {
+            PeopleSchema.create(keepAlive);
+            if (snapshot != null && isEmpty()) {
+                load(snapshot);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        this.startupNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Opens a fresh in-memory database with a name of its own.
+     */
+    public static PeopleDatabase inMemory() {
+        return inMemory("people-" + UNNAMED.incrementAndGet(), null);
+    }
+
+    public static PeopleDatabase inMemory(String name) {
+        return inMemory(name, null);
+    }
+
+    /**
+     * Opens the named in-memory database, which every connection from getUrl() shares.
+     */
+    public static PeopleDatabase inMemory(String name, Path snapshot) {
+        return new PeopleDatabase("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", true, snapshot, DEFAULT_POOL_SIZE);
+    }
+
+    public static PeopleDatabase file(Path file) {
+        return file(file, null);
+    }
+
+    /**
+     * Opens the database stored at file (H2 adds the .mv.db extension), creating it if needed.
+     * The snapshot is only loaded while PEOPLE is empty, so reopening an existing database
+     * doesn't load it twice.
+     */
+    public static PeopleDatabase file(Path file, Path snapshot) {
+        return new PeopleDatabase("jdbc:h2:" + file.toAbsolutePath(), false, snapshot, DEFAULT_POOL_SIZE);
+    }
+
+    private boolean isEmpty() {
+        try (Statement stmt = keepAlive.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT EXISTS(SELECT 1 FROM PEOPLE)")) {
+            rs.next();
+            return !rs.getBoolean(1);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to check whether PEOPLE is empty", e);
+        }
+    }
+
+    private void load(Path snapshot) {
+        if (snapshot.getFileName().toString().endsWith(".csv")) {
+            new PeopleCsv(new PeopleRepository(keepAlive)).importFrom(snapshot);
+            return;
+        }
+        execute("RUNSCRIPT FROM " + quote(snapshot));
+    }
+
+    /**
+     * Writes the PEOPLE and PEOPLE_TOMBSTONES tables, their indexes and rows, and the change
+     * sequence to an H2 SQL script that can be passed back in as a snapshot.
+     */
+    public void writeSnapshot(Path script) {
+        execute("SCRIPT DROP TO " + quote(script) + " TABLE PEOPLE, PEOPLE_TOMBSTONES");
+    }
+
+    private void execute(String sql) {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to execute: " + sql, e);
+        }
+    }
+
+    private static String quote(Path path) {
+        return "'" + path.toAbsolutePath().toString().replace("'", "''") + "'";
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * How long opening the database, creating the schema and loading the snapshot took.
+     */
+    public Duration getStartupTime() {
+        return Duration.ofNanos(startupNanos);
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Opens a new connection that the caller owns and must close.
+     */
+    public Connection openConnection() {
+        try {
+            return DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to open " + url, e);
+        }
+    }
+
+    /**
+     * Returns a repository on this database's connection pool, safe to share between threads.
+     */
+    public PeopleRepository newRepository() {
+        return new PeopleRepository(pool);
+    }
+
+    /**
+     * Closes the pool and the database. An in-memory database is shut down, so its data is gone.
+     * Closing it again does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pool.close();
+        try (keepAlive) {
+            if (inMemory) {
+                try (Statement stmt = keepAlive.createStatement()) {
+                    stmt.execute("SHUTDOWN");
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to close " + url, e);
+        }
+    }
+}
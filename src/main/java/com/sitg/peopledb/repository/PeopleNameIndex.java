@@ -0,0 +1,243 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory index of first and last names for autocomplete. Each distinct name, lower
+ * cased, maps to the sorted IDs of the people who have it as a first or last name, in a
+ * skip list sorted by name. A prefix search seeks to the first name with that prefix and
+ * walks forward, so its cost depends on the number of results wanted, not on the number
+ * of people.
+ * <p>
+ * attach builds the index with one streaming scan and then keeps it in step with the
+ * repository's saves, updates and deletes through an EntityListener. Writes made during
+ * the scan are held back and applied once it's done. Writes that bypass the repository
+ * aren't seen.
+ */
+public class PeopleNameIndex implements EntityListener<Person> {
+    private static final long[] NO_IDS = new long[0];
+
+    private record Names(String firstName, String lastName) {}
+
+    private final ConcurrentSkipListMap<String, long[]> idsByName = new ConcurrentSkipListMap<>();
+    private final Map<Long, Names> namesById = new ConcurrentHashMap<>();
+    private final Object buildLock = new Object();
+    /** Changes that arrived while attach was scanning; null once the index is live. */
+    private volatile List<Runnable> pending = new ArrayList<>();
+
+    private PeopleNameIndex() {
+    }
+
+    /**
+     * Registers a new index with the repository and fills it from a scan of the table.
+     * The index listens before the scan starts, so writes made during the scan aren't lost.
+     */
+    public static PeopleNameIndex attach(PeopleRepository repository) {
+        PeopleNameIndex index = new PeopleNameIndex();
+        repository.addEntityListener(index);
+        try {
+            index.build(repository);
+        } catch (RuntimeException e) {
+            repository.removeEntityListener(index);
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Collects each name's IDs in a growable list and installs the sorted arrays at the
+     * end, rather than copying a name's array once per person.
+     */
+    private void build(PeopleRepository repository) {
+        Map<String, IdList> names = new HashMap<>();
+        Map<Long, Names> people = new HashMap<>();
+        try (Stream<Person> scan = repository.streamAll()) {
+            scan.forEach(person -> {
+                long id = person.getId();
+                people.put(id, new Names(collect(names, person.getFirstName(), id),
+                        collect(names, person.getLastName(), id)));
+            });
+        }
+        synchronized (buildLock) {
+            names.values().forEach(ids -> idsByName.put(ids.name, ids.toSortedArray()));
+            namesById.putAll(people);
+            pending.forEach(Runnable::run);
+            pending = null;
+        }
+    }
+
+    private static String collect(Map<String, IdList> names, String name, long id) {
+        if (name == null) {
+            return null;
+        }
+        IdList ids = names.computeIfAbsent(normalize(name), IdList::new);
+        ids.add(id);
+        return ids.name;
+    }
+
+    /**
+     * Returns up to limit IDs of people whose first or last name starts with prefix,
+     * ignoring case. IDs come in order of the matching name and then by ID, each ID once.
+     */
+    public List<Long> findIdsByPrefix(String prefix, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1 but was " + limit);
+        }
+        String key = normalize(prefix);
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Map.Entry<String, long[]> name : idsByName.tailMap(key).entrySet()) {
+            if (!name.getKey().startsWith(key)) {
+                break;
+            }
+            for (long id : name.getValue()) {
+                ids.add(id);
+                if (ids.size() == limit) {
+                    return new ArrayList<>(ids);
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** The number of people in the index. */
+    public int size() {
+        return namesById.size();
+    }
+
+    public int getDistinctNameCount() {
+        return idsByName.size();
+    }
+
+    @Override
+    public void onSaved(Person person) {
+        add(person);
+    }
+
+    @Override
+    public void onUpdated(Person person) {
+        add(person);
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        apply(() -> namesById.computeIfPresent(id, (key, names) -> {
+            removeId(names.firstName(), id);
+            removeId(names.lastName(), id);
+            return null;
+        }));
+    }
+
+    private void apply(Runnable change) {
+        if (pending != null) {
+            synchronized (buildLock) {
+                if (pending != null) {
+                    pending.add(change);
+                    return;
+                }
+            }
+        }
+        change.run();
+    }
+
+    /**
+     * Indexes the person's current names, replacing any it was indexed under before.
+     * Changes to one ID are serialized by namesById.compute.
+     */
+    private void add(Person person) {
+        Long id = person.getId();
+        Names names = new Names(normalize(person.getFirstName()), normalize(person.getLastName()));
+        apply(() -> namesById.compute(id, (key, old) -> {
+            if (old != null) {
+                removeId(old.firstName(), id);
+                removeId(old.lastName(), id);
+            }
+            addId(names.firstName(), id);
+            addId(names.lastName(), id);
+            return names;
+        }));
+    }
+
+    private void addId(String name, long id) {
+        if (name != null) {
+            idsByName.merge(name, new long[]{id}, (ids, added) -> insert(ids, id));
+        }
+    }
+
+    private void removeId(String name, long id) {
+        if (name != null) {
+            idsByName.computeIfPresent(name, (key, ids) -> {
+                long[] remaining = remove(ids, id);
+                return remaining.length == 0 ? null : remaining;
+            });
+        }
+    }
+
+    private static long[] insert(long[] ids, long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at >= 0) {
+            return ids;
+        }
+        at = -at - 1;
+        long[] inserted = new long[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, at);
+        inserted[at] = id;
+        System.arraycopy(ids, at, inserted, at + 1, ids.length - at);
+        return inserted;
+    }
+
+    private static long[] remove(long[] ids, long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return NO_IDS;
+        }
+        long[] removed = new long[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, at);
+        System.arraycopy(ids, at + 1, removed, at, ids.length - at - 1);
+        return removed;
+    }
+
+    private static final class IdList {
+        private final String name;
+        private long[] ids = new long[2];
+        private int size;
+
+        IdList(String name) {
+            this.name = name;
+        }
+
+        void add(long id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;  // the first and last name are the same
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private static String normalize(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,26 +1,290 @@
 package com.sitg.peopledb.repository;
 
 import com.sitg.peopledb.model.Person;
+import com.sitg.peopledb.model.PersonName;
 
 import java.math.BigDecimal;
 import java.sql.*;
-import java.time.ZoneId;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public class PeopleRepository extends CRUDRepository<Person> {
-    public static final String SAVE_PERSON_SQL = "INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB) VALUES(?, ?, ?)";
-    public static final String FIND_BY_ID_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY FROM PEOPLE WHERE ID=?";
-    public static final String FIND_ALL_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY FROM PEOPLE";
+    public static final String SAVE_PERSON_SQL = "INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY) VALUES(?, ?, ?, ?)";
+    public static final String FIND_BY_ID_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, VERSION FROM PEOPLE WHERE ID=?";
+    public static final String FIND_ALL_SQL = "SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, VERSION FROM PEOPLE";
     public static final String SELECT_COUNT_SQL = "SELECT COUNT(*) FROM PEOPLE";
-    public static final String DELETE_SQL = "DELETE FROM PEOPLE WHERE ID=?";
-    public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
-    public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=?, WHERE ID=?";
+    /** Deletes the row and leaves a tombstone in PEOPLE_TOMBSTONES for findModifiedSince, in one statement. */
+    public static final String DELETE_SQL =
+            "MERGE INTO PEOPLE_TOMBSTONES (ID) KEY (ID) SELECT ID FROM OLD TABLE (DELETE FROM PEOPLE WHERE ID=?)";
+    public static final String DELETE_IN_SQL =
+            "MERGE INTO PEOPLE_TOMBSTONES (ID) KEY (ID) SELECT ID FROM OLD TABLE (DELETE FROM PEOPLE WHERE ID IN (:ids))";
+    public static final String UPDATE_SQL =
+            "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=?, VERSION=VERSION+1 WHERE ID=?";
+    /**
+     * Live rows and tombstones changed after a watermark, in CHANGE_SEQ order. Each side is
+     * limited on its own first, so both can be read from their CHANGE_SEQ index.
+     */
+    public static final String FIND_MODIFIED_SINCE_SQL = """
+            (SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, VERSION, CHANGE_SEQ, FALSE AS DELETED FROM PEOPLE
+              WHERE CHANGE_SEQ > ? ORDER BY CHANGE_SEQ LIMIT ?)
+            UNION ALL
+            (SELECT ID, NULL, NULL, NULL, NULL, NULL, CHANGE_SEQ, TRUE FROM PEOPLE_TOMBSTONES
+              WHERE CHANGE_SEQ > ? ORDER BY CHANGE_SEQ LIMIT ?)
+            ORDER BY CHANGE_SEQ LIMIT ?""";
+    public static final String PURGE_TOMBSTONES_SQL = "DELETE FROM PEOPLE_TOMBSTONES WHERE CHANGE_SEQ <= ?";
+    public static final String FIND_BY_LAST_NAME_SQL = FIND_ALL_SQL + " WHERE LAST_NAME=? ORDER BY FIRST_NAME, ID";
+    public static final String FIND_BY_FIRST_AND_LAST_NAME_SQL = FIND_ALL_SQL + " WHERE LAST_NAME=? AND FIRST_NAME=? ORDER BY ID";
+    public static final String FIND_BY_DOB_BETWEEN_SQL = FIND_ALL_SQL + " WHERE DOB BETWEEN ? AND ? ORDER BY DOB, ID";
+    private static final String LIMIT = " LIMIT ?";
+    public static final int NO_LIMIT = 0;
+    private static final String SALARY_AGGREGATES = "COUNT(*), SUM(SALARY), AVG(SALARY), MIN(SALARY), MAX(SALARY)";
+    public static final String SALARY_STATS_SQL = "SELECT " + SALARY_AGGREGATES + " FROM PEOPLE";
+    public static final String SALARY_STATS_BY_DOB_YEAR_SQL = "SELECT EXTRACT(YEAR FROM DOB), " + SALARY_AGGREGATES
+            + " FROM PEOPLE GROUP BY EXTRACT(YEAR FROM DOB) ORDER BY 1";
+    public static final String SALARY_STATS_BY_LAST_NAME_SQL = "SELECT LAST_NAME, " + SALARY_AGGREGATES
+            + " FROM PEOPLE GROUP BY LAST_NAME ORDER BY LAST_NAME";
+    public static final String SALARY_STATS_BY_AGE_SQL = "SELECT BRACKET, " + SALARY_AGGREGATES + """
+             FROM (SELECT (CAST(? AS INT) - EXTRACT(YEAR FROM DOB)
+                 - CASE WHEN EXTRACT(MONTH FROM DOB) * 100 + EXTRACT(DAY FROM DOB) > CAST(? AS INT) THEN 1 ELSE 0 END)
+                 / CAST(? AS INT) * CAST(? AS INT) AS BRACKET, SALARY
+               FROM PEOPLE WHERE DOB < ?)
+             GROUP BY BRACKET ORDER BY BRACKET""";
+    private static final Map<String, String> UPDATE_COLUMNS;
+    static {
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("firstName", "FIRST_NAME");
+        columns.put("lastName", "LAST_NAME");
+        columns.put("dob", "DOB");
+        columns.put("salary", "SALARY");
+        UPDATE_COLUMNS = Collections.unmodifiableMap(columns);
+    }
+    /** ID, first and last name only, for findAllAs and the other projection reads. */
+    public static final Projection<PersonName> NAMES = new Projection<>(List.of("ID", "FIRST_NAME", "LAST_NAME"), rs -> {
+        int id = rs.findColumn("ID");
+        int firstName = rs.findColumn("FIRST_NAME");
+        int lastName = rs.findColumn("LAST_NAME");
+        return row -> new PersonName(row.getLong(id), row.getString(firstName), row.getString(lastName));
+    });
+    public static final SortKey<Person> BY_LAST_NAME = new SortKey<>("LAST_NAME", Person::getLastName);
+    public static final SortKey<Person> BY_DOB = new SortKey<>("DOB", person -> convertDobToUtc(person.getDob()));
 //    private Connection connection;
     public PeopleRepository(Connection connection) {
         super(connection);
 //        this.connection = connection;
     }
 
+    public PeopleRepository(ConnectionProvider connections) {
+        super(connections);
+    }
+
+    /**
+     * Returns up to limit changes made after watermark, oldest first: people saved or
+     * updated since, as they are now, and the IDs of people deleted since. Start from 0 and
+     * pass each batch's watermark back in to follow the table without rereading it.
+     * <p>
+     * CHANGE_SEQ values are handed out when a row is written, not when its transaction
+     * commits, so a long transaction can commit a change below a watermark that was already
+     * read. Readers that run alongside such transactions should go back a little from the
+     * last watermark; rereading a change is harmless.
+     */
+    public ChangeBatch<Person> findModifiedSince(long watermark, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1 but was " + limit);
+        }
+        List<Change> changes = query(FIND_MODIFIED_SINCE_SQL, ps -> {
+            ps.setLong(1, watermark);
+            ps.setInt(2, limit + 1);
+            ps.setLong(3, watermark);
+            ps.setInt(4, limit + 1);
+            ps.setInt(5, limit + 1);
+        }, this::changeMapper);
+        List<Person> changed = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        long last = watermark;
+        for (Change change : changes.subList(0, Math.min(limit, changes.size()))) {
+            if (change.person() == null) {
+                deletedIds.add(change.id());
+            } else {
+                changed.add(change.person());
+            }
+            last = change.changeSeq();
+        }
+        return new ChangeBatch<>(changed, deletedIds, last, changes.size() > limit);
+    }
+
+    /**
+     * Drops the tombstones at or below watermark, once every reader of findModifiedSince
+     * has got past it. Returns the number dropped.
+     */
+    public long purgeTombstones(long watermark) {
+        return execute(PURGE_TOMBSTONES_SQL, ps -> ps.setLong(1, watermark));
+    }
+
+    /** One row of FIND_MODIFIED_SINCE_SQL; person is null for a tombstone. */
+    private record Change(long id, Person person, long changeSeq) {}
+
+    private RowMapper<Change> changeMapper(ResultSet rs) throws SQLException {
+        RowMapper<Person> people = rowMapper(rs);
+        int id = rs.findColumn("ID");
+        int changeSeq = rs.findColumn("CHANGE_SEQ");
+        int deleted = rs.findColumn("DELETED");
+        return row -> new Change(row.getLong(id), row.getBoolean(deleted) ? null : people.map(row), row.getLong(changeSeq));
+    }
+
+    /**
+     * Returns every person with only the named properties fetched, e.g. "firstName" and
+     * "lastName", plus ID and version. The first time one of the others is read, the rest of
+     * that person's row is fetched by ID, so this pays off when few people need more than
+     * the properties asked for. An OptimisticLockException is thrown at that point if the
+     * row changed in between. Updates write only what was changed, as with any Person.
+     */
+    public List<Person> findAllLazily(String... properties) {
+        Set<String> missing = new HashSet<>(UPDATE_COLUMNS.keySet());
+        List<String> columns = new ArrayList<>(List.of("ID", "VERSION"));
+        for (String property : properties) {
+            String column = UPDATE_COLUMNS.get(property);
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown property: " + property);
+            }
+            if (missing.remove(property)) {
+                columns.add(column);
+            }
+        }
+        return findAllAs(new Projection<>(columns, rs -> lazyPersonMapper(rs, missing)));
+    }
+
+    private RowMapper<Person> lazyPersonMapper(ResultSet rs, Set<String> missing) throws SQLException {
+        int id = rs.findColumn("ID");
+        int version = rs.findColumn("VERSION");
+        int firstName = missing.contains("firstName") ? 0 : rs.findColumn("FIRST_NAME");
+        int lastName = missing.contains("lastName") ? 0 : rs.findColumn("LAST_NAME");
+        int dob = missing.contains("dob") ? 0 : rs.findColumn("DOB");
+        int salary = missing.contains("salary") ? 0 : rs.findColumn("SALARY");
+        return row -> new LazyPerson(this, row.getLong(id),
+                firstName == 0 ? null : row.getString(firstName),
+                lastName == 0 ? null : row.getString(lastName),
+                dob == 0 ? null : ZonedDateTime.of(row.getObject(dob, LocalDateTime.class), ZoneOffset.UTC),
+                salary == 0 ? null : row.getBigDecimal(salary),
+                row.getLong(version), missing);
+    }
+
+    /** Reads the whole row for a LazyPerson, skipping the entity cache. */
+    Optional<Person> findRowById(long id) {
+        return query(FIND_BY_ID_SQL, ps -> ps.setLong(1, id), this::rowMapper).stream().findFirst();
+    }
+
+    public List<Person> findByLastName(String lastName) {
+        return findByLastName(lastName, NO_LIMIT);
+    }
+
+    /**
+     * Returns up to limit people with the last name, ordered by first name, or all of
+     * them when limit is NO_LIMIT. Uses the IDX_PEOPLE_LAST_NAME index from PeopleSchema.
+     */
+    public List<Person> findByLastName(String lastName, int limit) {
+        return find(FIND_BY_LAST_NAME_SQL, 2, limit, ps -> ps.setString(1, lastName));
+    }
+
+    public List<Person> findByFirstAndLastName(String firstName, String lastName) {
+        return findByFirstAndLastName(firstName, lastName, NO_LIMIT);
+    }
+
+    public List<Person> findByFirstAndLastName(String firstName, String lastName, int limit) {
+        return find(FIND_BY_FIRST_AND_LAST_NAME_SQL, 3, limit, ps -> {
+            ps.setString(1, lastName);
+            ps.setString(2, firstName);
+        });
+    }
+
+    public List<Person> findByDobBetween(ZonedDateTime from, ZonedDateTime to) {
+        return findByDobBetween(from, to, NO_LIMIT);
+    }
+
+    /**
+     * Returns up to limit people born between from and to, both inclusive, in DOB order.
+     * Uses the IDX_PEOPLE_DOB_ID index from PeopleSchema.
+     */
+    public List<Person> findByDobBetween(ZonedDateTime from, ZonedDateTime to, int limit) {
+        return find(FIND_BY_DOB_BETWEEN_SQL, 3, limit, ps -> {
+            ps.setObject(1, convertDobToUtc(from));
+            ps.setObject(2, convertDobToUtc(to));
+        });
+    }
+
+    /**
+     * Runs a finder query, appending LIMIT ? as parameter limitIndex unless limit is NO_LIMIT.
+     */
+    private List<Person> find(String sql, int limitIndex, int limit, Parameters parameters) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative but was " + limit);
+        }
+        if (limit == NO_LIMIT) {
+            return query(sql, parameters, this::rowMapper);
+        }
+        return query(sql + LIMIT, ps -> {
+            parameters.bind(ps);
+            ps.setInt(limitIndex, limit);
+        }, this::rowMapper);
+    }
+
+    /**
+     * Returns count, total, average, min and max salary over the whole table.
+     */
+    public SalaryStats<Void> getSalaryStats() {
+        return query(SALARY_STATS_SQL, Parameters.NONE, PeopleRepository.<Void>salaryStatsMapper(null)).get(0);
+    }
+
+    /**
+     * Returns salary aggregates per year of birth (in UTC), in year order.
+     */
+    public List<SalaryStats<Integer>> getSalaryStatsByDobYear() {
+        return query(SALARY_STATS_BY_DOB_YEAR_SQL, Parameters.NONE,
+                salaryStatsMapper((rs, column) -> rs.getObject(column, Integer.class)));
+    }
+
+    public List<SalaryStats<String>> getSalaryStatsByLastName() {
+        return query(SALARY_STATS_BY_LAST_NAME_SQL, Parameters.NONE, salaryStatsMapper(ResultSet::getString));
+    }
+
+    /**
+     * Returns salary aggregates per age bracket on the asOf date, in age order. Each group is
+     * keyed by the youngest age in its bracket, e.g. 30 for 30-39 with 10-year brackets.
+     * People born after asOf are left out.
+     */
+    public List<SalaryStats<Integer>> getSalaryStatsByAgeBracket(int bracketYears, LocalDate asOf) {
+        if (bracketYears < 1) {
+            throw new IllegalArgumentException("bracketYears must be at least 1 but was " + bracketYears);
+        }
+        return query(SALARY_STATS_BY_AGE_SQL, ps -> {
+            ps.setInt(1, asOf.getYear());
+            ps.setInt(2, asOf.getMonthValue() * 100 + asOf.getDayOfMonth());
+            ps.setInt(3, bracketYears);
+            ps.setInt(4, bracketYears);
+            ps.setObject(5, asOf.plusDays(1).atStartOfDay());
+        }, salaryStatsMapper((rs, column) -> rs.getInt(column)));
+    }
+
+    private interface GroupReader<K> {
+        K read(ResultSet rs, int column) throws SQLException;
+    }
+
+    private static <K> RowMapper.Factory<SalaryStats<K>> salaryStatsMapper(GroupReader<K> group) {
+        int first = group == null ? 1 : 2;
+        return rs -> row -> new SalaryStats<>(group == null ? null : group.read(row, 1), row.getLong(first),
+                row.getBigDecimal(first + 1), row.getBigDecimal(first + 2), row.getBigDecimal(first + 3),
+                row.getBigDecimal(first + 4));
+    }
+
     @Override
     String getSaveSql() {
         return SAVE_PERSON_SQL;
@@ -29,7 +293,8 @@ public class PeopleRepository extends CRUDRepository<Person> {
     void mapForSave(Person entity, PreparedStatement ps) throws SQLException {
         ps.setString(1, entity.getFirstName());
         ps.setString(2, entity.getLastName());
-        ps.setTimestamp(3, convertDobToTimestamp(entity.getDob()));
+        ps.setObject(3, convertDobToUtc(entity.getDob()));
+        ps.setBigDecimal(4, entity.getSalary());
     }
 
     @Override
@@ -37,9 +302,33 @@ public class PeopleRepository extends CRUDRepository<Person> {
         long personId = rs.getLong("ID");
         String firstName = rs.getString("FIRST_NAME");
         String lastName = rs.getString("LAST_NAME");
-        ZonedDateTime dob = ZonedDateTime.of(rs.getTimestamp("DOB").toLocalDateTime(), ZoneId.of("+0"));
+        ZonedDateTime dob = convertDobFromUtc(rs.getObject("DOB", LocalDateTime.class));
         BigDecimal salary = rs.getBigDecimal("SALARY");
-        return new Person(personId, firstName, lastName, dob, salary);
+        return loaded(new Person(personId, firstName, lastName, dob, salary), rs.getLong("VERSION"));
+    }
+
+    @Override
+    RowMapper<Person> rowMapper(ResultSet rs) throws SQLException {
+        int id = rs.findColumn("ID");
+        int firstName = rs.findColumn("FIRST_NAME");
+        int lastName = rs.findColumn("LAST_NAME");
+        int dob = rs.findColumn("DOB");
+        int salary = rs.findColumn("SALARY");
+        int version = rs.findColumn("VERSION");
+        return row -> loaded(new Person(row.getLong(id), row.getString(firstName), row.getString(lastName),
+                convertDobFromUtc(row.getObject(dob, LocalDateTime.class)), row.getBigDecimal(salary)),
+                row.getLong(version));
+    }
+
+    @Override
+    Person copy(Person entity) {
+        return new Person(entity);
+    }
+
+    private static Person loaded(Person person, long version) {
+        person.setVersion(version);
+        person.clearChangedProperties();
+        return person;
     }
 
     @Override
@@ -73,12 +362,24 @@ public class PeopleRepository extends CRUDRepository<Person> {
     }
 
     @Override
-    void mapForUpdate(Person entity, PreparedStatement ps) throws SQLException {
-        ps.setString(1, entity.getFirstName());
-        ps.setString(2, entity.getLastName());
-        ps.setTimestamp(3, convertDobToTimestamp(entity.getDob()));
-        ps.setBigDecimal(4, entity.getSalary());
+    protected String getTableName() {
+        return "PEOPLE";
+    }
 
+    @Override
+    protected Map<String, String> getUpdateColumns() {
+        return UPDATE_COLUMNS;
+    }
+
+    @Override
+    void bindUpdateColumn(Person entity, String column, PreparedStatement ps, int index) throws SQLException {
+        switch (column) {
+            case "FIRST_NAME" -> ps.setString(index, entity.getFirstName());
+            case "LAST_NAME" -> ps.setString(index, entity.getLastName());
+            case "DOB" -> ps.setObject(index, convertDobToUtc(entity.getDob()));
+            case "SALARY" -> ps.setBigDecimal(index, entity.getSalary());
+            default -> throw new IllegalArgumentException("Unknown PEOPLE column: " + column);
+        }
     }
     //    public Person save(Person entity) {
 //        try {
@@ -187,7 +488,14 @@ public class PeopleRepository extends CRUDRepository<Person> {
 //            e.printStackTrace();
 //        }
 //    }
-    private static Timestamp convertDobToTimestamp(ZonedDateTime dob) {
-        return Timestamp.valueOf(dob.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
+    private static ZonedDateTime convertDobFromUtc(LocalDateTime dob) {
+        return dob == null ? null : ZonedDateTime.of(dob, ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime convertDobToUtc(ZonedDateTime dob) {
+        if (dob == null) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(dob.toEpochSecond(), dob.getNano(), ZoneOffset.UTC);
     }
 }
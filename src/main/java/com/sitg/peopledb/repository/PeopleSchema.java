@@ -0,0 +1,74 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Creates the PEOPLE table and the indexes PeopleRepository's finders rely on, skipping
+ * whatever already exists, so it's safe to run every time an application starts. Tables
+ * created before row versioning get the VERSION and CHANGE_SEQ columns added.
+ * <p>
+ * VERSION counts a row's updates for optimistic locking. CHANGE_SEQ takes the next value
+ * of PEOPLE_CHANGE_SEQ whenever the row is inserted or updated, by any writer, and deletes
+ * leave a tombstone with its own CHANGE_SEQ in PEOPLE_TOMBSTONES; together they feed
+ * PeopleRepository.findModifiedSince.
+ */
+public final class PeopleSchema {
+    public static final String CREATE_CHANGE_SEQUENCE_SQL = "CREATE SEQUENCE IF NOT EXISTS PEOPLE_CHANGE_SEQ";
+    private static final String VERSION_COLUMN = "VERSION BIGINT NOT NULL DEFAULT " + CRUDRepository.INITIAL_VERSION;
+    private static final String CHANGE_SEQ_COLUMN = """
+            CHANGE_SEQ BIGINT NOT NULL DEFAULT NEXT VALUE FOR PEOPLE_CHANGE_SEQ
+            ON UPDATE NEXT VALUE FOR PEOPLE_CHANGE_SEQ""";
+    public static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+            FIRST_NAME VARCHAR(255), LAST_NAME VARCHAR(255), DOB TIMESTAMP, SALARY DECIMAL(15,2) DEFAULT 0,
+            %s, %s)""".formatted(VERSION_COLUMN, CHANGE_SEQ_COLUMN);
+    public static final String ADD_VERSION_COLUMN_SQL = "ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS " + VERSION_COLUMN;
+    public static final String ADD_CHANGE_SEQ_COLUMN_SQL = "ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS " + CHANGE_SEQ_COLUMN;
+    public static final String CREATE_TOMBSTONES_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS PEOPLE_TOMBSTONES (ID BIGINT PRIMARY KEY, %s)""".formatted(CHANGE_SEQ_COLUMN);
+    /** Serves findByLastName and findByFirstAndLastName. */
+    public static final String CREATE_LAST_NAME_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_LAST_NAME ON PEOPLE (LAST_NAME, FIRST_NAME)";
+    /** Serves paging by PeopleRepository.BY_LAST_NAME. */
+    public static final String CREATE_LAST_NAME_ID_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_LAST_NAME_ID ON PEOPLE (LAST_NAME, ID)";
+    /** Serves findByDobBetween and paging by PeopleRepository.BY_DOB. */
+    public static final String CREATE_DOB_INDEX_SQL = "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_DOB_ID ON PEOPLE (DOB, ID)";
+    /** The DOB index from before paging, which IDX_PEOPLE_DOB_ID replaces. */
+    public static final String DROP_OLD_DOB_INDEX_SQL = "DROP INDEX IF EXISTS IDX_PEOPLE_DOB";
+    /** Serves findModifiedSince. */
+    public static final String CREATE_CHANGE_SEQ_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_CHANGE_SEQ ON PEOPLE (CHANGE_SEQ)";
+    public static final String CREATE_TOMBSTONES_CHANGE_SEQ_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS IDX_PEOPLE_TOMBSTONES_CHANGE_SEQ ON PEOPLE_TOMBSTONES (CHANGE_SEQ)";
+    public static final List<String> DDL = List.of(CREATE_CHANGE_SEQUENCE_SQL, CREATE_TABLE_SQL,
+            ADD_VERSION_COLUMN_SQL, ADD_CHANGE_SEQ_COLUMN_SQL, CREATE_LAST_NAME_INDEX_SQL, CREATE_LAST_NAME_ID_INDEX_SQL,
+            CREATE_DOB_INDEX_SQL, DROP_OLD_DOB_INDEX_SQL,
+            CREATE_CHANGE_SEQ_INDEX_SQL, CREATE_TOMBSTONES_TABLE_SQL, CREATE_TOMBSTONES_CHANGE_SEQ_INDEX_SQL);
+
+    private PeopleSchema() {
+    }
+
+    public static void create(Connection connection) {
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : DDL) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to create the PEOPLE schema", e);
+        }
+    }
+
+    public static void create(ConnectionProvider connections) {
+        try (ConnectionLease lease = connections.acquire()) {
+            create(lease.getConnection());
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to create the PEOPLE schema", e);
+        }
+    }
+}
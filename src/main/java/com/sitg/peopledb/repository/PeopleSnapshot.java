@@ -0,0 +1,299 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable, column-per-property copy of the PEOPLE table for analytics scans. Each
+ * column is a primitive array indexed by row: IDs as longs, DOBs as UTC epoch days (plus
+ * the millisecond of the day), salaries as cents, and names as int codes into a
+ * dictionary holding each distinct name once. Scans read just the arrays they need and
+ * never create a Person; get(row) and the finders materialize people on demand.
+ * <p>
+ * parallel() returns a view over the same columns whose scans are split across the
+ * common fork-join pool. The snapshot doesn't see later changes to the table.
+ * DOBs are kept to the millisecond, so materialized people lose any finer precision, and
+ * a missing salary is stored as 0.
+ */
+public class PeopleSnapshot {
+    /** The scale H2 gives AVG over a DECIMAL(15,2) column. */
+    static final int AVERAGE_SCALE = 12;
+
+    private final long[] ids;
+    private final int[] firstNames;
+    private final int[] lastNames;
+    private final int[] dobDays;
+    private final int[] dobMillis;
+    private final long[] salaryCents;
+    private final String[] names;
+    private final Map<String, Integer> codes;
+    private final boolean parallel;
+
+    private PeopleSnapshot(Loader loader) {
+        int size = loader.size;
+        this.ids = Arrays.copyOf(loader.ids, size);
+        this.firstNames = Arrays.copyOf(loader.firstNames, size);
+        this.lastNames = Arrays.copyOf(loader.lastNames, size);
+        this.dobDays = Arrays.copyOf(loader.dobDays, size);
+        this.dobMillis = Arrays.copyOf(loader.dobMillis, size);
+        this.salaryCents = Arrays.copyOf(loader.salaryCents, size);
+        this.names = loader.names.toArray(String[]::new);
+        this.codes = loader.codes;
+        this.parallel = false;
+    }
+
+    private PeopleSnapshot(PeopleSnapshot columns, boolean parallel) {
+        this.ids = columns.ids;
+        this.firstNames = columns.firstNames;
+        this.lastNames = columns.lastNames;
+        this.dobDays = columns.dobDays;
+        this.dobMillis = columns.dobMillis;
+        this.salaryCents = columns.salaryCents;
+        this.names = columns.names;
+        this.codes = columns.codes;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Copies every row of the table into a new snapshot, streaming them so the people are
+     * never all in memory at once.
+     */
+    public static PeopleSnapshot load(PeopleRepository repository) {
+        Loader loader = new Loader();
+        try (Stream<Person> people = repository.streamAll()) {
+            people.forEach(loader::add);
+        }
+        return new PeopleSnapshot(loader);
+    }
+
+    /**
+     * Returns a view of this snapshot that runs its scans in parallel.
+     */
+    public PeopleSnapshot parallel() {
+        return parallel ? this : new PeopleSnapshot(this, true);
+    }
+
+    public PeopleSnapshot sequential() {
+        return parallel ? new PeopleSnapshot(this, false) : this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /** The number of distinct first and last names. */
+    public int getDistinctNameCount() {
+        return names.length;
+    }
+
+    /**
+     * Builds the person in the given row, numbered from 0 in the order the rows were loaded.
+     */
+    public Person get(int row) {
+        ZonedDateTime dob = LocalDate.ofEpochDay(dobDays[row])
+                .atTime(LocalTime.ofNanoOfDay(dobMillis[row] * 1_000_000L))
+                .atZone(ZoneOffset.UTC);
+        Person person = new Person(ids[row], names[firstNames[row]], names[lastNames[row]], dob,
+                BigDecimal.valueOf(salaryCents[row], 2));
+        person.clearChangedProperties();
+        return person;
+    }
+
+    public List<Person> findByLastName(String lastName) {
+        Integer code = codes.get(lastName);
+        if (code == null) {
+            return List.of();
+        }
+        int lastNameCode = code;
+        return find(row -> lastNames[row] == lastNameCode);
+    }
+
+    /**
+     * Returns the people born on any day from from to to, both inclusive (in UTC).
+     */
+    public List<Person> findByDobBetween(LocalDate from, LocalDate to) {
+        return find(bornBetween(from, to));
+    }
+
+    private List<Person> find(IntPredicate filter) {
+        return rows().filter(filter).mapToObj(this::get).toList();
+    }
+
+    public SalaryStats<Void> getSalaryStats() {
+        return salaryStats(row -> true).toStats(null);
+    }
+
+    /**
+     * Returns salary aggregates over the people born on any day from from to to, both
+     * inclusive (in UTC).
+     */
+    public SalaryStats<Void> getSalaryStats(LocalDate bornFrom, LocalDate bornTo) {
+        return salaryStats(bornBetween(bornFrom, bornTo)).toStats(null);
+    }
+
+    /**
+     * Returns salary aggregates per year of birth (in UTC), in year order, like
+     * PeopleRepository.getSalaryStatsByDobYear.
+     */
+    public List<SalaryStats<Integer>> getSalaryStatsByDobYear() {
+        if (size() == 0) {
+            return List.of();
+        }
+        int firstYear = LocalDate.ofEpochDay(rows().map(row -> dobDays[row]).min().getAsInt()).getYear();
+        int lastYear = LocalDate.ofEpochDay(rows().map(row -> dobDays[row]).max().getAsInt()).getYear();
+        return groupedStats(row -> LocalDate.ofEpochDay(dobDays[row]).getYear() - firstYear,
+                lastYear - firstYear + 1, group -> firstYear + group);
+    }
+
+    /**
+     * Returns salary aggregates per last name, in name order, like
+     * PeopleRepository.getSalaryStatsByLastName. People without a last name are grouped
+     * under null, which sorts first as it does in H2.
+     */
+    public List<SalaryStats<String>> getSalaryStatsByLastName() {
+        return groupedStats(row -> lastNames[row], names.length, code -> names[code]);
+    }
+
+    private IntStream rows() {
+        IntStream rows = IntStream.range(0, ids.length);
+        return parallel ? rows.parallel() : rows;
+    }
+
+    private IntPredicate bornBetween(LocalDate from, LocalDate to) {
+        int first = Math.toIntExact(from.toEpochDay());
+        int last = Math.toIntExact(to.toEpochDay());
+        return row -> dobDays[row] >= first && dobDays[row] <= last;
+    }
+
+    private SalaryAccumulator salaryStats(IntPredicate filter) {
+        return rows().filter(filter).collect(SalaryAccumulator::new,
+                (stats, row) -> stats.add(salaryCents[row]), SalaryAccumulator::combine);
+    }
+
+    /**
+     * Aggregates salaries per group, where group maps each row to a dense group number
+     * below groups. Groups without rows are left out of the result.
+     */
+    private <K extends Comparable<K>> List<SalaryStats<K>> groupedStats(IntUnaryOperator group, int groups,
+                                                                        IntFunction<K> key) {
+        SalaryAccumulator[] totals = rows().collect(() -> new SalaryAccumulator[groups],
+                (stats, row) -> {
+                    int g = group.applyAsInt(row);
+                    if (stats[g] == null) {
+                        stats[g] = new SalaryAccumulator();
+                    }
+                    stats[g].add(salaryCents[row]);
+                },
+                (left, right) -> {
+                    for (int g = 0; g < groups; g++) {
+                        if (left[g] == null) {
+                            left[g] = right[g];
+                        } else if (right[g] != null) {
+                            left[g].combine(right[g]);
+                        }
+                    }
+                });
+        List<SalaryStats<K>> stats = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            if (totals[g] != null) {
+                stats.add(totals[g].toStats(key.apply(g)));
+            }
+        }
+        stats.sort(Comparator.comparing(SalaryStats::group, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return stats;
+    }
+
+    private static final class SalaryAccumulator {
+        private long count;
+        private long total;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        void add(long cents) {
+            count++;
+            total += cents;
+            min = Math.min(min, cents);
+            max = Math.max(max, cents);
+        }
+
+        void combine(SalaryAccumulator other) {
+            count += other.count;
+            total += other.total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        <K> SalaryStats<K> toStats(K group) {
+            if (count == 0) {
+                return new SalaryStats<>(group, 0, null, null, null, null);
+            }
+            BigDecimal sum = BigDecimal.valueOf(total, 2);
+            return new SalaryStats<>(group, count, sum,
+                    sum.divide(BigDecimal.valueOf(count), AVERAGE_SCALE, RoundingMode.HALF_UP),
+                    BigDecimal.valueOf(min, 2), BigDecimal.valueOf(max, 2));
+        }
+    }
+
+    /**
+     * Fills growing columns one person at a time; the snapshot trims them to size.
+     */
+    private static final class Loader {
+        private long[] ids = new long[1024];
+        private int[] firstNames = new int[1024];
+        private int[] lastNames = new int[1024];
+        private int[] dobDays = new int[1024];
+        private int[] dobMillis = new int[1024];
+        private long[] salaryCents = new long[1024];
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private int size;
+
+        void add(Person person) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                firstNames = Arrays.copyOf(firstNames, capacity);
+                lastNames = Arrays.copyOf(lastNames, capacity);
+                dobDays = Arrays.copyOf(dobDays, capacity);
+                dobMillis = Arrays.copyOf(dobMillis, capacity);
+                salaryCents = Arrays.copyOf(salaryCents, capacity);
+            }
+            ZonedDateTime dob = person.getDob().withZoneSameInstant(ZoneOffset.UTC);
+            ids[size] = person.getId();
+            firstNames[size] = code(person.getFirstName());
+            lastNames[size] = code(person.getLastName());
+            dobDays[size] = Math.toIntExact(dob.toLocalDate().toEpochDay());
+            dobMillis[size] = (int) (dob.toLocalTime().toNanoOfDay() / 1_000_000);
+            salaryCents[size] = person.getSalary() == null ? 0 : person.getSalary().movePointRight(2).longValueExact();
+            size++;
+        }
+
+        private int code(String name) {
+            return codes.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+    }
+}
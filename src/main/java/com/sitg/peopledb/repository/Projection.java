@@ -0,0 +1,29 @@
+package com.sitg.peopledb.repository;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The columns a query selects and how to map each row of them, for reads that don't need
+ * whole entities. Only the listed columns are fetched and decoded. Column names go into the
+ * SQL as they are, so they must be plain identifiers rather than caller input.
+ */
+public record Projection<R>(List<String> columns, RowMapper.Factory<R> mapper) {
+    private static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    public Projection {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("A projection needs at least one column");
+        }
+        for (String column : columns) {
+            if (!COLUMN.matcher(column).matches()) {
+                throw new IllegalArgumentException("Not a column name: " + column);
+            }
+        }
+        columns = List.copyOf(columns);
+    }
+
+    String selectFrom(String table) {
+        return "SELECT " + String.join(", ", columns) + " FROM " + table;
+    }
+}
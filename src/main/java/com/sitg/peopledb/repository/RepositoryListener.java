@@ -0,0 +1,18 @@
+package com.sitg.peopledb.repository;
+
+/**
+ * Told about every statement a repository runs, keyed by its SQL text. Called on the
+ * thread running the statement, so implementations should be cheap and thread-safe.
+ */
+public interface RepositoryListener {
+    RepositoryListener NONE = new RepositoryListener() {};
+
+    /**
+     * @param rows rows affected for writes, rows read for queries
+     */
+    default void onSuccess(String sql, long elapsedNanos, long rows) {
+    }
+
+    default void onError(String sql, long elapsedNanos, Exception error) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.sitg.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+
+    /**
+     * Builds a RowMapper for one ResultSet, so work like resolving column
+     * indexes happens once per query instead of once per row.
+     */
+    @FunctionalInterface
+    interface Factory<T> {
+        RowMapper<T> forResultSet(ResultSet rs) throws SQLException;
+    }
+}
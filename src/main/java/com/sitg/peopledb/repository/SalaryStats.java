@@ -0,0 +1,11 @@
+package com.sitg.peopledb.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Salary aggregates for one group of people, computed by the database or a PeopleSnapshot. group is the
+ * value the rows were grouped by, or null for the totals over the whole table.
+ * total, average, min and max are null when the group has no salaries.
+ */
+public record SalaryStats<K>(K group, long count, BigDecimal total, BigDecimal average, BigDecimal min, BigDecimal max) {
+}
@@ -0,0 +1,268 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.model.Person;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Spreads people across several PeopleRepository shards, each on its own database, so
+ * writes to different shards don't contend. Shard i hands out the IDs i+1, i+1+N, i+1+2N
+ * and so on for N shards, which keeps IDs unique across shards and lets every operation
+ * on a known ID go straight to shard (id - 1) mod N; there's no hashing involved. New
+ * people go to the shards in turn.
+ * <p>
+ * findAll, count and the bulk operations run on all the shards they touch in parallel and
+ * merge the results. There is no transaction across shards: a bulk write that fails on
+ * one shard can already have been applied on others.
+ */
+public class ShardedPeopleRepository implements AutoCloseable {
+    private final List<PeopleRepository> shards;
+    private final List<PeopleDatabase> databases;
+    private final ExecutorService executor;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Shards over the given repositories, in order. Each shard's PEOPLE table must be empty
+     * or already set up as that shard of this many shards.
+     */
+    public ShardedPeopleRepository(List<PeopleRepository> shards) {
+        this(shards, List.of());
+    }
+
+    private ShardedPeopleRepository(List<PeopleRepository> shards, List<PeopleDatabase> databases) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = List.copyOf(shards);
+        this.databases = databases;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            configureIds(shards.get(shard).getConnectionProvider(), shard, shards.size());
+        }
+        this.executor = AsyncRepository.newDefaultExecutor();
+    }
+
+    /**
+     * Opens or creates shardCount file databases named people-0, people-1, ... in directory.
+     * Closing the repository closes them.
+     */
+    public static ShardedPeopleRepository open(Path directory, int shardCount) {
+        return open(shardCount, shard -> PeopleDatabase.file(directory.resolve("people-" + shard)));
+    }
+
+    public static ShardedPeopleRepository inMemory(int shardCount) {
+        return open(shardCount, shard -> PeopleDatabase.inMemory());
+    }
+
+    private static ShardedPeopleRepository open(int shardCount, Function<Integer, PeopleDatabase> database) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1 but was " + shardCount);
+        }
+        List<PeopleDatabase> databases = new ArrayList<>(shardCount);
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                databases.add(database.apply(shard));
+            }
+            return new ShardedPeopleRepository(databases.stream().map(PeopleDatabase::newRepository).toList(), databases);
+        } catch (RuntimeException e) {
+            databases.forEach(PeopleDatabase::close);
+            throw e;
+        }
+    }
+
+    /**
+     * Sets an empty shard's identity column to count from shard + 1 in steps of shardCount,
+     * or checks that a shard with rows already does.
+     */
+    private static void configureIds(ConnectionProvider connections, int shard, int shardCount) {
+        try (ConnectionLease lease = connections.acquire();
+             Statement stmt = lease.getConnection().createStatement()) {
+            long increment;
+            long next;
+            try (ResultSet rs = stmt.executeQuery("""
+                    SELECT IDENTITY_INCREMENT, IDENTITY_BASE FROM INFORMATION_SCHEMA.COLUMNS
+                    WHERE TABLE_NAME='PEOPLE' AND COLUMN_NAME='ID'""")) {
+                rs.next();
+                increment = rs.getLong(1);
+                next = rs.getLong(2);
+            }
+            if (increment == shardCount && Math.floorMod(next - 1, shardCount) == shard) {
+                return;
+            }
+            boolean empty;
+            try (ResultSet rs = stmt.executeQuery("SELECT NOT EXISTS(SELECT 1 FROM PEOPLE)")) {
+                rs.next();
+                empty = rs.getBoolean(1);
+            }
+            if (!empty) {
+                throw new IllegalStateException("Shard %d already has rows with IDs that aren't set up for %d shards"
+                        .formatted(shard, shardCount));
+            }
+            stmt.execute("ALTER TABLE PEOPLE ALTER COLUMN ID RESTART WITH %d SET INCREMENT BY %d"
+                    .formatted(shard + 1, shardCount));
+            commitIfNeeded(lease.getConnection());
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to set up IDs for shard " + shard, e);
+        }
+    }
+
+    private static void commitIfNeeded(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public PeopleRepository getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * The shard that holds the row with this ID: (id - 1) mod the shard count. Routing
+     * follows the interleaved identity sequences, not a hash of the ID, so it only holds
+     * for IDs the shards generated themselves.
+     */
+    public int shardOf(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Can't route a person without an ID to a shard");
+        }
+        return (int) Math.floorMod(id - 1, (long) shards.size());
+    }
+
+    public Person save(Person person) {
+        return shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size())).save(person);
+    }
+
+    /**
+     * Deals the people out to the shards in turn and saves each shard's share in parallel.
+     */
+    public List<Person> saveAll(Collection<Person> people) {
+        List<List<Person>> byShard = emptyShares();
+        int first = nextShard.getAndAdd(people.size());
+        int i = 0;
+        for (Person person : people) {
+            byShard.get(Math.floorMod(first + i++, shards.size())).add(person);
+        }
+        forEachShard(byShard, PeopleRepository::saveAll);
+        return List.copyOf(people);
+    }
+
+    public Optional<Person> findById(Long id) {
+        return shards.get(shardOf(id)).findById(id);
+    }
+
+    public List<Person> findAllById(Collection<Long> ids) {
+        return concat(forEachShard(byShard(ids, id -> id), PeopleRepository::findAllById));
+    }
+
+    /**
+     * Returns every person from every shard, shard by shard.
+     */
+    public List<Person> findAll() {
+        return concat(onAllShards(PeopleRepository::findAll));
+    }
+
+    public long count() {
+        return onAllShards(PeopleRepository::count).stream().mapToLong(Long::longValue).sum();
+    }
+
+    public void update(Person person) {
+        shards.get(shardOf(person.getId())).update(person);
+    }
+
+    public void updateAll(Collection<Person> people) {
+        forEachShard(byShard(people, Person::getId), (shard, share) -> {
+            shard.updateAll(share);
+            return null;
+        });
+    }
+
+    public void delete(Person person) {
+        shards.get(shardOf(person.getId())).delete(person);
+    }
+
+    public void deleteAllById(Collection<Long> ids) {
+        forEachShard(byShard(ids, id -> id), (shard, share) -> {
+            shard.deleteAllById(share);
+            return null;
+        });
+    }
+
+    private <E> List<List<E>> emptyShares() {
+        List<List<E>> shares = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            shares.add(new ArrayList<>());
+        }
+        return shares;
+    }
+
+    private <E> List<List<E>> byShard(Collection<E> items, Function<E, Long> idOf) {
+        List<List<E>> shares = emptyShares();
+        for (E item : items) {
+            shares.get(shardOf(idOf.apply(item))).add(item);
+        }
+        return shares;
+    }
+
+    private <R> List<R> onAllShards(Function<PeopleRepository, R> operation) {
+        List<List<Void>> all = emptyShares();
+        all.forEach(share -> share.add(null));
+        return forEachShard(all, (shard, share) -> operation.apply(shard));
+    }
+
+    /**
+     * Runs the operation on each shard with a non-empty share, in parallel, and returns the
+     * results in shard order. The first failure is rethrown once every shard has finished.
+     */
+    private <E, R> List<R> forEachShard(List<List<E>> shares, BiFunction<PeopleRepository, List<E>, R> operation) {
+        List<CompletableFuture<R>> results = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            PeopleRepository repository = shards.get(shard);
+            List<E> share = shares.get(shard);
+            if (!share.isEmpty()) {
+                results.add(CompletableFuture.supplyAsync(() -> operation.apply(repository, share), executor));
+            }
+        }
+        try {
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static List<Person> concat(List<List<Person>> shares) {
+        List<Person> people = new ArrayList<>();
+        shares.forEach(people::addAll);
+        return people;
+    }
+
+    /**
+     * Stops the fan-out threads and closes the shard databases this repository opened.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        databases.forEach(PeopleDatabase::close);
+    }
+}
@@ -0,0 +1,44 @@
+package com.sitg.peopledb.repository;
+
+import java.sql.Connection;
+
+/**
+ * Hands out the same Connection for every operation. Like the Connection itself,
+ * a repository built on this provider must not be shared between threads.
+ */
+public class SingleConnectionProvider implements ConnectionProvider {
+    private final ConnectionLease lease;
+
+    public SingleConnectionProvider(Connection connection) {
+        this(connection, StatementCache.DEFAULT_MAX_SIZE);
+    }
+
+    public SingleConnectionProvider(Connection connection, int statementCacheSize) {
+        StatementCache statements = new StatementCache(connection, statementCacheSize);
+        this.lease = new ConnectionLease() {
+            @Override
+            public Connection getConnection() {
+                return connection;
+            }
+
+            @Override
+            public StatementCache getStatements() {
+                return statements;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public ConnectionLease acquire() {
+        return lease;
+    }
+
+    @Override
+    public StatementCacheStats getStatementCacheStats() {
+        return lease.getStatements().getStats();
+    }
+}
@@ -0,0 +1,14 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+import java.util.function.Function;
+
+/**
+ * A column to page through in order, with ID as the tie-breaker. valueOf must return the
+ * entity's value for that column in a form the JDBC driver can bind, e.g. a UTC LocalDateTime for DOB,
+ * or null when the column is NULL; such rows come first. For page queries to stay cheap
+ * the column should have an index on (column, ID).
+ */
+public record SortKey<T extends Entity>(String column, Function<T, Object> valueOf) {
+}
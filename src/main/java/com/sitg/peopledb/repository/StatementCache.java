@@ -0,0 +1,125 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the PreparedStatements of one Connection open so repeated SQL is only parsed once.
+ * Holds at most maxSize statements and closes the least recently used one when it's full.
+ * Statements handed out are owned by the cache, so callers must not close them.
+ */
+public class StatementCache implements AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    private record Key(String sql, int autoGeneratedKeys) {}
+
+    private final Connection connection;
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_MAX_SIZE);
+    }
+
+    public StatementCache(Connection connection, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but was " + maxSize);
+        }
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement ps = statements.get(key);
+        if (ps != null && !ps.isClosed()) {
+            hits++;
+            ps.clearParameters();
+            return ps;
+        }
+        misses++;
+        if (ps == null && statements.size() == maxSize) {
+            evictEldest();
+        }
+        ps = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, ps);
+        return ps;
+    }
+
+    /**
+     * Closes the least recently used statement. A failure to close it is thrown, like any
+     * other failure to prepare, so it reaches the repository's listener.
+     */
+    private void evictEldest() throws SQLException {
+        Iterator<PreparedStatement> eldest = statements.values().iterator();
+        PreparedStatement ps = eldest.next();
+        eldest.remove();
+        evictions++;
+        ps.close();
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized StatementCacheStats getStats() {
+        return new StatementCacheStats(hits, misses, evictions, statements.size());
+    }
+
+    /**
+     * Closes every cached statement, then throws if any of them failed to close.
+     */
+    @Override
+    public synchronized void close() {
+        SQLException failure = null;
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        statements.clear();
+        if (failure != null) {
+            throw new DataAccessException("Unable to close cached statements", failure);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.sitg.peopledb.repository;
+
+public record StatementCacheStats(long hits, long misses, long evictions, int size) {
+    public static final StatementCacheStats EMPTY = new StatementCacheStats(0, 0, 0, 0);
+
+    public StatementCacheStats plus(StatementCacheStats other) {
+        return new StatementCacheStats(hits + other.hits, misses + other.misses,
+                evictions + other.evictions, size + other.size);
+    }
+}
@@ -0,0 +1,10 @@
+package com.sitg.peopledb.repository;
+
+/**
+ * How many rows a bulk import or export moved and how long it took.
+ */
+public record TransferResult(long rows, long elapsedNanos) {
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+    }
+}
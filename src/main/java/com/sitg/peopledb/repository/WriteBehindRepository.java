@@ -0,0 +1,570 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Entity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Queues saves, updates and deletes and writes them to the repository later, in one
+ * transaction per flush. Repeated updates to the same ID collapse into as few as the
+ * entities' changed properties allow, and a delete wins over updates queued for the same
+ * ID. A background thread flushes once flushSize writes are queued or flushInterval has
+ * passed, whichever comes first.
+ * <p>
+ * At most maxBacklog writes can be queued or in flight; past that, writers block until
+ * a flush frees room, so they slow to the rate the database can absorb. Each write takes
+ * a snapshot of its entity when it's queued and the flush writes that, so callers can
+ * keep changing their entities meanwhile. Once the flush commits, each entity gets the ID
+ * and version its snapshot was written with; its changed properties stay set, since it
+ * may have changed again since it was queued. Reads through the repository don't see
+ * writes that are still queued.
+ * <p>
+ * save, update and delete return a future that completes once the write has committed,
+ * or with the reason it failed, e.g. an OptimisticLockException for an update whose row
+ * someone else changed. A write absorbed by a later one completes with it. When a flush
+ * fails, it's rolled back and each of its writes is tried again in a savepoint of its
+ * own, so only the writes that fail themselves are dropped, and their entities are left
+ * as they were. Futures complete on the flushing thread, so anything chained to them
+ * should be quick.
+ * <p>
+ * Flushes run on their own thread, so the repository should sit on a ConnectionPool.
+ */
+public class WriteBehindRepository<T extends Entity> implements AutoCloseable {
+    public static final int DEFAULT_MAX_BACKLOG = 10_000;
+    public static final int DEFAULT_FLUSH_SIZE = 500;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+
+    private final CRUDRepository<T> repository;
+    private final int maxBacklog;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushWanted = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread flusher;
+
+    private List<Pending<T>> inserts = new ArrayList<>();
+    private Map<Long, List<Pending<T>>> updates = new LinkedHashMap<>();
+    private int queuedUpdates;
+    private Map<Long, CompletableFuture<Void>> deletes = new LinkedHashMap<>();
+    private int inFlight;
+    private List<Pending<T>> insertsInFlight = List.of();
+    private boolean closed;
+    private long flushes;
+    private long written;
+    private long failed;
+    private long coalesced;
+
+    public WriteBehindRepository(CRUDRepository<T> repository) {
+        this(repository, DEFAULT_MAX_BACKLOG, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public WriteBehindRepository(CRUDRepository<T> repository, int maxBacklog, int flushSize, Duration flushInterval) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException("flushSize must be at least 1 but was " + flushSize);
+        }
+        if (maxBacklog < flushSize) {
+            throw new IllegalArgumentException("maxBacklog (%d) must be at least flushSize (%d)".formatted(maxBacklog, flushSize));
+        }
+        this.repository = repository;
+        this.maxBacklog = maxBacklog;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * A queued write: the caller's entity, the snapshot of it taken when the write was
+     * queued, which is what the flush writes, the version the snapshot had then, and the
+     * future handed back to the caller.
+     */
+    private record Pending<T>(T original, T snapshot, Long loadedVersion, CompletableFuture<Void> done) {}
+
+    private Pending<T> pending(T entity) {
+        T snapshot = repository.copy(entity);
+        return new Pending<>(entity, snapshot, snapshot.getVersion(), new CompletableFuture<>());
+    }
+
+    /**
+     * Completes the future of a write that a later one absorbed the same way as the later one.
+     */
+    private static void follow(CompletableFuture<Void> absorbed, CompletableFuture<Void> survivor) {
+        survivor.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                absorbed.complete(null);
+            } else {
+                absorbed.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * Queues the entity for insertion. Its ID is assigned once the flush commits.
+     */
+    public CompletableFuture<Void> save(T entity) {
+        return enqueue(entity, () -> {
+            Pending<T> insert = pending(entity);
+            inserts.add(insert);
+            return insert.done();
+        });
+    }
+
+    /**
+     * Queues an update. Queued updates for the same ID that this one fully overwrites, i.e.
+     * whose changed properties it also changed, are dropped, as is an earlier queueing of
+     * the same instance. Updating an entity whose save is still queued refreshes the
+     * snapshot the insert writes; if its save is being flushed, this waits for the flush.
+     */
+    public CompletableFuture<Void> update(T entity) {
+        return enqueue(entity, () -> {
+            if (entity.getId() == null) {
+                int index = queuedInsert(entity);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Can't update an entity without an ID: " + entity);
+                }
+                Pending<T> insert = pending(entity);
+                follow(inserts.set(index, insert).done(), insert.done());
+                coalesced++;
+                return insert.done();
+            }
+            CompletableFuture<Void> delete = deletes.get(entity.getId());
+            if (delete != null) {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                follow(done, delete);
+                coalesced++;
+                return done;
+            }
+            List<Pending<T>> queued = updates.computeIfAbsent(entity.getId(), id -> new ArrayList<>(1));
+            Pending<T> update = pending(entity);
+            Set<String> changed = update.snapshot().getChangedProperties();
+            for (Iterator<Pending<T>> it = queued.iterator(); it.hasNext(); ) {
+                Pending<T> earlier = it.next();
+                if (earlier.original() == entity || overwrites(changed, earlier.snapshot().getChangedProperties())) {
+                    it.remove();
+                    follow(earlier.done(), update.done());
+                    coalesced++;
+                    queuedUpdates--;
+                }
+            }
+            queued.add(update);
+            queuedUpdates++;
+            return update.done();
+        });
+    }
+
+    private static boolean overwrites(Set<String> changed, Set<String> earlier) {
+        return changed == null || earlier != null && changed.containsAll(earlier);
+    }
+
+    /**
+     * Queues a delete and drops any update queued for the same ID. Deleting an entity
+     * whose save is still queued just drops the save, and both futures complete at once;
+     * if its save is being flushed, this waits for the flush.
+     */
+    public CompletableFuture<Void> delete(T entity) {
+        return enqueue(entity, () -> {
+            if (entity.getId() == null) {
+                int index = queuedInsert(entity);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Can't delete an entity without an ID: " + entity);
+                }
+                inserts.remove(index).done().complete(null);
+                coalesced++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> done = deletes.get(entity.getId());
+            if (done == null) {
+                done = new CompletableFuture<>();
+                deletes.put(entity.getId(), done);
+            } else {
+                coalesced++;
+            }
+            List<Pending<T>> queued = updates.remove(entity.getId());
+            if (queued != null) {
+                for (Pending<T> update : queued) {
+                    follow(update.done(), done);
+                }
+                coalesced += queued.size();
+                queuedUpdates -= queued.size();
+            }
+            return done;
+        });
+    }
+
+    private int queuedInsert(T entity) {
+        for (int i = 0; i < inserts.size(); i++) {
+            if (inserts.get(i).original() == entity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the running flush is inserting the entity, which gets its ID only once the
+     * flush commits.
+     */
+    private boolean isInsertInFlight(T entity) {
+        if (entity.getId() != null) {
+            return false;
+        }
+        for (Pending<T> insert : insertsInFlight) {
+            if (insert.original() == entity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CompletableFuture<Void> enqueue(T entity, Supplier<CompletableFuture<Void>> change) {
+        lock.lock();
+        try {
+            while (!closed && (queued() + inFlight >= maxBacklog || isInsertInFlight(entity))) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-behind repository is closed");
+            }
+            CompletableFuture<Void> done = change.get();
+            if (queued() >= flushSize) {
+                flushWanted.signal();
+            }
+            return done;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queued() {
+        return inserts.size() + queuedUpdates + deletes.size();
+    }
+
+    /**
+     * Writes everything queued so far: inserts first, then updates, then deletes, in one
+     * transaction if none of them fails. Each write's outcome goes to its own future.
+     */
+    public void flush() {
+        flushQueued();
+    }
+
+    private void flushQueued() {
+        flushLock.lock();
+        try {
+            List<Pending<T>> toInsert;
+            List<List<Pending<T>>> toUpdate;
+            Map<Long, CompletableFuture<Void>> toDelete;
+            lock.lock();
+            try {
+                if (queued() == 0) {
+                    return;
+                }
+                inFlight = queued();
+                toInsert = inserts;
+                insertsInFlight = toInsert;
+                toUpdate = updateRounds(updates);
+                toDelete = deletes;
+                inserts = new ArrayList<>();
+                updates = new LinkedHashMap<>();
+                queuedUpdates = 0;
+                deletes = new LinkedHashMap<>();
+            } finally {
+                lock.unlock();
+            }
+            Map<Long, long[]> versions = new HashMap<>();  // ID -> {version loaded at, version last written}
+            Map<CompletableFuture<Void>, RuntimeException> failures = new IdentityHashMap<>();
+            RuntimeException error = null;
+            try {
+                repository.runInTransaction(() -> {
+                    if (!toInsert.isEmpty()) {
+                        repository.saveAll(toInsert.stream().map(Pending::snapshot).toList());
+                    }
+                    updateInRounds(toUpdate, versions);
+                    if (!toDelete.isEmpty()) {
+                        repository.deleteAllById(toDelete.keySet());
+                    }
+                });
+            } catch (RuntimeException e) {
+                versions.clear();
+                failures.clear();
+                try {
+                    writeEach(toInsert, toUpdate, toDelete, versions, failures);
+                } catch (RuntimeException retryFailure) {
+                    error = retryFailure;
+                }
+            }
+            lock.lock();
+            try {
+                if (error == null) {
+                    flushes++;
+                    written += inFlight - failures.size();
+                    failed += failures.size();
+                    committed(toInsert, toUpdate, versions, failures);
+                } else {
+                    failed += inFlight;
+                }
+                inFlight = 0;
+                insertsInFlight = List.of();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            complete(toInsert, toUpdate, toDelete, failures, error);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes each of a failed flush's writes again in one transaction, each in a savepoint
+     * of its own, and records the failure of each write that fails on its own. Snapshots
+     * are first put back at the versions they were queued with, since the rolled back
+     * attempt may have moved them.
+     */
+    private void writeEach(List<Pending<T>> toInsert, List<List<Pending<T>>> toUpdate,
+                           Map<Long, CompletableFuture<Void>> toDelete, Map<Long, long[]> versions,
+                           Map<CompletableFuture<Void>, RuntimeException> failures) {
+        toUpdate.forEach(round -> round.forEach(update -> update.snapshot().setVersion(update.loadedVersion())));
+        repository.runInTransaction(() -> {
+            for (Pending<T> insert : toInsert) {
+                attempt(insert.done(), () -> repository.save(insert.snapshot()), failures);
+            }
+            for (List<Pending<T>> round : toUpdate) {
+                for (Pending<T> update : round) {
+                    attempt(update.done(), () -> updateInRounds(List.of(List.of(update)), versions), failures);
+                }
+            }
+            toDelete.forEach((id, done) -> attempt(done, () -> repository.deleteAllById(List.of(id)), failures));
+        });
+    }
+
+    private void attempt(CompletableFuture<Void> done, Runnable write,
+                         Map<CompletableFuture<Void>, RuntimeException> failures) {
+        try {
+            repository.inTransaction(write);
+        } catch (RuntimeException e) {
+            failures.put(done, e);
+        }
+    }
+
+    /**
+     * Completes the futures of a flush's writes, outside the lock since callers may chain
+     * more writes onto them: with error if the flush failed as a whole, otherwise with each
+     * write's own failure, if any.
+     */
+    private void complete(List<Pending<T>> inserted, List<List<Pending<T>>> rounds,
+                          Map<Long, CompletableFuture<Void>> deleted,
+                          Map<CompletableFuture<Void>, RuntimeException> failures, RuntimeException error) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        inserted.forEach(insert -> futures.add(insert.done()));
+        rounds.forEach(round -> round.forEach(update -> futures.add(update.done())));
+        futures.addAll(deleted.values());
+        for (CompletableFuture<Void> done : futures) {
+            RuntimeException failure = error != null ? error : failures.get(done);
+            if (failure == null) {
+                done.complete(null);
+            } else {
+                done.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Splits the queued updates into rounds holding at most one update per ID. Running the
+     * rounds in order applies several updates to one row in the order they were queued.
+     */
+    private static <T> List<List<T>> updateRounds(Map<Long, List<T>> updates) {
+        List<List<T>> rounds = new ArrayList<>();
+        for (List<T> queued : updates.values()) {
+            for (int i = 0; i < queued.size(); i++) {
+                if (rounds.size() == i) {
+                    rounds.add(new ArrayList<>());
+                }
+                rounds.get(i).add(queued.get(i));
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Runs the update rounds in order, recording in versions the version each updated ID
+     * was loaded at and the one last written. A later round's update of an ID that was
+     * loaded at the same version as the earlier round's is moved onto the version that
+     * round wrote, so the queue's own updates don't fail each other's optimistic lock
+     * check. A row changed by anyone else since still fails it.
+     */
+    private void updateInRounds(List<List<Pending<T>>> rounds, Map<Long, long[]> versions) {
+        for (List<Pending<T>> round : rounds) {
+            List<T> snapshots = new ArrayList<>(round.size());
+            Map<Long, Long> loadedAt = new HashMap<>();
+            for (Pending<T> update : round) {
+                T entity = update.snapshot();
+                snapshots.add(entity);
+                long[] known = versions.get(entity.getId());
+                if (known != null && entity.getVersion() != null && entity.getVersion() == known[0]) {
+                    entity.setVersion(known[1]);
+                    loadedAt.put(entity.getId(), known[0]);
+                } else {
+                    loadedAt.put(entity.getId(), entity.getVersion());
+                }
+            }
+            repository.updateAll(snapshots);
+            for (T entity : snapshots) {
+                Long loaded = loadedAt.get(entity.getId());
+                if (loaded != null && entity.getVersion() != null) {
+                    versions.put(entity.getId(), new long[]{loaded, entity.getVersion()});
+                }
+            }
+        }
+    }
+
+    /**
+     * Once a flush has committed, gives the callers' entities the IDs and versions their
+     * snapshots were written with, unless the write failed or the entity has moved on to
+     * another version since.
+     * Updates are applied newest first, so an entity queued several times ends at the
+     * version its last update wrote. Snapshots queued meanwhile for a row this flush
+     * updated, at the version it was loaded at, are moved onto the version it wrote.
+     */
+    private void committed(List<Pending<T>> inserted, List<List<Pending<T>>> rounds, Map<Long, long[]> versions,
+                           Map<CompletableFuture<Void>, RuntimeException> failures) {
+        for (Pending<T> insert : inserted) {
+            if (!failures.containsKey(insert.done())) {
+                insert.original().setId(insert.snapshot().getId());
+                insert.original().setVersion(insert.snapshot().getVersion());
+            }
+        }
+        for (int i = rounds.size() - 1; i >= 0; i--) {
+            for (Pending<T> update : rounds.get(i)) {
+                if (!failures.containsKey(update.done())
+                        && Objects.equals(update.original().getVersion(), update.loadedVersion())) {
+                    update.original().setVersion(update.snapshot().getVersion());
+                }
+            }
+        }
+        for (List<Pending<T>> queued : updates.values()) {
+            queued.replaceAll(update -> {
+                long[] known = versions.get(update.original().getId());
+                if (known == null || update.loadedVersion() == null || update.loadedVersion() != known[0]) {
+                    return update;
+                }
+                update.snapshot().setVersion(known[1]);
+                return new Pending<>(update.original(), update.snapshot(), known[1], update.done());
+            });
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            lock.lock();
+            try {
+                long remaining = flushIntervalNanos;
+                while (!closed && queued() < flushSize && remaining > 0) {
+                    try {
+                        remaining = flushWanted.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            flushQueued();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public long getFlushCount() {
+        lock.lock();
+        try {
+            return flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The number of queued writes that reached the database. */
+    public long getWrittenCount() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The number of queued writes that failed; their futures hold the reasons. */
+    public long getFailedCount() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The number of writes that were absorbed by a later write to the same entity. */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting writes, flushes what's queued and stops the background thread.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushWanted.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,40 @@
+package com.sitg.peopledb.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 10_000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat((double) histogram.percentile(50)).isCloseTo(5_000_000, within(5_000_000 * 0.125));
+        assertThat((double) histogram.percentile(99)).isCloseTo(9_900_000, within(9_900_000 * 0.125));
+        assertThat(histogram.percentile(100)).isEqualTo(10_000_000);
+        assertThat(histogram.getMax()).isEqualTo(10_000_000);
+    }
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(LatencyHistogram.upperBoundOf(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.upperBoundOf(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(99)).isZero();
+        assertThat(histogram.getMean()).isZero();
+    }
+}
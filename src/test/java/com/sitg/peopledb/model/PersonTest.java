@@ -2,6 +2,7 @@ package com.sitg.peopledb.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
@@ -22,6 +23,40 @@ class PersonTest {
         Person p2 = new Person("p2", "smith", ZonedDateTime.of(2000,9,1,12,0,0,0, ZoneId.of("+0")));
         assertThat(p1).isNotEqualTo(p2);
     }
+    @Test
+    public void testForEqualityAcrossZones() {
+        Person p1 = new Person("p1", "smith", ZonedDateTime.of(2000,9,1,12,0,0,0, ZoneId.of("+0")));
+        Person p2 = new Person("p1", "smith", ZonedDateTime.of(2000,9,1,6,0,0,0, ZoneId.of("-6")));
+        assertThat(p1).isEqualTo(p2);
+        assertThat(p1.hashCode()).isEqualTo(p2.hashCode());
+    }
+    @Test
+    public void testForEqualityWithoutDob() {
+        Person p1 = new Person("p1", "smith", null);
+        Person p2 = new Person("p1", "smith", null);
+        assertThat(p1).isEqualTo(p2);
+        assertThat(p1.hashCode()).isEqualTo(p2.hashCode());
+        assertThat(p1).isNotEqualTo(new Person("p1", "smith", ZonedDateTime.of(2000,9,1,12,0,0,0, ZoneId.of("+0"))));
+    }
+    @Test
+    public void testForEqualityById() {
+        Person p1 = new Person(7L, "p1", "smith", ZonedDateTime.of(2000,9,1,12,0,0,0, ZoneId.of("+0")));
+        Person p2 = new Person(7L, "p2", "jones", null);
+        assertThat(p1).isEqualTo(p2);
+        assertThat(p1.hashCode()).isEqualTo(p2.hashCode());
+        assertThat(p1).isNotEqualTo(new Person(8L, "p1", "smith", p1.getDob()));
+        assertThat(p1).isNotEqualTo(new Person("p1", "smith", p1.getDob()));
+    }
+    @Test
+    public void testTracksChangedProperties() {
+        Person p1 = new Person("p1", "smith", ZonedDateTime.of(2000,9,1,12,0,0,0, ZoneId.of("+0")));
+        assertThat(p1.getChangedProperties()).containsExactlyInAnyOrder("firstName", "lastName", "dob", "salary");
+        p1.clearChangedProperties();
+        p1.setFirstName("p1");
+        assertThat(p1.getChangedProperties()).isEmpty();
+        p1.setSalary(new BigDecimal("100"));
+        assertThat(p1.getChangedProperties()).containsExactly("salary");
+    }
 
 
 }
\ No newline at end of file
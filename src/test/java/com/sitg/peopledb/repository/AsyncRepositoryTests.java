@@ -0,0 +1,95 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncRepositoryTests {
+    private static final String URL = "jdbc:h2:mem:asynctest;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL);
+        PeopleSchema.create(keepAlive);
+        pool = new ConnectionPool(URL, 8);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.createStatement().execute("DROP TABLE PEOPLE");
+        keepAlive.close();
+    }
+
+    @Test
+    public void canSaveAndFindAsynchronously() {
+        try (AsyncRepository<Person> async = new AsyncRepository<>(new PeopleRepository(pool))) {
+            Person saved = async.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))).join();
+            Optional<Person> found = async.findById(saved.getId()).join();
+            assertThat(found).contains(saved);
+            async.delete(saved).join();
+            assertThat(async.findById(saved.getId()).join()).isEmpty();
+        }
+    }
+
+    @Test
+    public void neverRunsMoreThanMaxInFlight() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        ConnectionProvider counting = new ConnectionProvider() {
+            @Override
+            public ConnectionLease acquire() throws SQLException {
+                ConnectionLease lease = pool.acquire();
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                return new ConnectionLease() {
+                    @Override
+                    public Connection getConnection() {
+                        return lease.getConnection();
+                    }
+
+                    @Override
+                    public StatementCache getStatements() {
+                        return lease.getStatements();
+                    }
+
+                    @Override
+                    public void close() {
+                        active.decrementAndGet();
+                        lease.close();
+                    }
+                };
+            }
+
+            @Override
+            public StatementCacheStats getStatementCacheStats() {
+                return pool.getStatementCacheStats();
+            }
+        };
+        try (AsyncRepository<Person> async = new AsyncRepository<>(new PeopleRepository(counting), 2)) {
+            List<CompletableFuture<Person>> saves = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                saves.add(async.save(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))));
+            }
+            CompletableFuture.allOf(saves.toArray(CompletableFuture[]::new)).join();
+            assertThat(saves).allSatisfy(save -> assertThat(save.join().getId()).isNotNull());
+        }
+        assertThat(maxActive.get()).isLessThanOrEqualTo(2);
+    }
+}
@@ -0,0 +1,175 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.exception.UnableToAcquireConnectionException;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionPoolTests {
+    private static final String URL = "jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL);
+        PeopleSchema.create(keepAlive);
+        pool = new ConnectionPool(() -> DriverManager.getConnection(URL), 4, Duration.ofMillis(200), Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.createStatement().execute("DROP TABLE PEOPLE");
+        keepAlive.close();
+    }
+
+    @Test
+    public void reusesReturnedConnection() throws SQLException {
+        Connection first;
+        try (ConnectionLease lease = pool.acquire()) {
+            first = lease.getConnection();
+        }
+        try (ConnectionLease lease = pool.acquire()) {
+            assertThat(lease.getConnection()).isSameAs(first);
+        }
+        assertThat(pool.getOpenCount()).isEqualTo(1);
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void closesRetiredConnectionInsteadOfReusingIt() throws SQLException {
+        Connection retired;
+        try (ConnectionLease lease = pool.acquire()) {
+            retired = lease.getConnection();
+            lease.retire();
+        }
+        assertThat(retired.isClosed()).isTrue();
+        assertThat(pool.getOpenCount()).isZero();
+        try (ConnectionLease lease = pool.acquire()) {
+            assertThat(lease.getConnection()).isNotSameAs(retired);
+        }
+    }
+
+    @Test
+    public void acquireTimesOutWhenPoolIsExhausted() throws SQLException {
+        List<ConnectionLease> leases = new ArrayList<>();
+        for (int i = 0; i < pool.getMaxSize(); i++) {
+            leases.add(pool.acquire());
+        }
+        assertThatThrownBy(pool::acquire).isInstanceOf(UnableToAcquireConnectionException.class);
+        leases.forEach(ConnectionLease::close);
+        assertThat(pool.getActiveCount()).isZero();
+    }
+
+    @Test
+    public void evictsIdleConnections() throws SQLException {
+        ConnectionPool evicting = new ConnectionPool(() -> DriverManager.getConnection(URL), 2, Duration.ofMillis(200), Duration.ZERO);
+        Connection connection;
+        try (ConnectionLease lease = evicting.acquire()) {
+            connection = lease.getConnection();
+        }
+        assertThat(evicting.evictIdle()).isEqualTo(1);
+        assertThat(evicting.getOpenCount()).isZero();
+        assertThat(connection.isClosed()).isTrue();
+        evicting.close();
+    }
+
+    @Test
+    public void acquireSurvivesIdleConnectionThatFailsToClose() throws SQLException {
+        ConnectionPool evicting = new ConnectionPool(ConnectionPoolTests::unclosableConnection, 2, Duration.ofMillis(200), Duration.ZERO);
+        Connection stale;
+        try (ConnectionLease lease = evicting.acquire()) {
+            stale = lease.getConnection();
+        }
+        try (ConnectionLease lease = evicting.acquire()) {
+            assertThat(lease.getConnection()).isNotSameAs(stale);
+        }
+        assertThat(evicting.getCloseFailureCount()).isEqualTo(1);
+
+        assertThatThrownBy(evicting::evictIdle).isInstanceOf(DataAccessException.class)
+                .hasCauseInstanceOf(SQLException.class);
+        assertThat(evicting.getCloseFailureCount()).isEqualTo(2);
+        assertThat(evicting.getOpenCount()).isZero();
+        evicting.close();
+    }
+
+    private static Connection unclosableConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(URL);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        connection.close();
+                        throw new SQLException("close failed");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Test
+    public void closingStreamReturnsConnectionToPool() {
+        PeopleRepository repo = new PeopleRepository(pool);
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        try (Stream<Person> people = repo.streamAll()) {
+            assertThat(pool.getActiveCount()).isEqualTo(1);
+            assertThat(people.findFirst()).isPresent();
+        }
+        assertThat(pool.getActiveCount()).isZero();
+    }
+
+    @Test
+    public void canShareRepositoryAcrossThreads() throws Exception {
+        PeopleRepository repo = new PeopleRepository(pool);
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                int found = 0;
+                for (int i = 0; i < perThread; i++) {
+                    Person saved = repo.save(new Person("T" + thread, "P" + i, ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+                    if (repo.findById(saved.getId()).isPresent()) {
+                        found++;
+                    }
+                }
+                return found;
+            }));
+        }
+        int found = 0;
+        for (Future<Integer> result : results) {
+            found += result.get();
+        }
+        executor.shutdown();
+        assertThat(found).isEqualTo(threads * perThread);
+        assertThat(repo.count()).isEqualTo(threads * perThread);
+        assertThat(pool.getOpenCount()).isLessThanOrEqualTo(pool.getMaxSize());
+        assertThat(pool.getActiveCount()).isZero();
+    }
+}
@@ -0,0 +1,76 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EntityCacheTests {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<Long, Optional<Person>> loader = id -> {
+        loads.incrementAndGet();
+        return id < 0 ? Optional.empty() : Optional.of(new Person(id, "John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+    };
+
+    @Test
+    public void loadsOnceThenHits() {
+        EntityCache<Person> cache = new EntityCache<>(10);
+        Person first = cache.get(1L, loader).get();
+        Person second = cache.get(1L, loader).get();
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getStats().hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        EntityCache<Person> cache = new EntityCache<>(2);
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+        cache.get(1L, loader);
+        cache.get(3L, loader);
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+        assertThat(loads).hasValue(4);
+        assertThat(cache.getStats().evictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl() throws InterruptedException {
+        EntityCache<Person> cache = new EntityCache<>(10, Duration.ofMillis(1), false);
+        cache.get(1L, loader);
+        Thread.sleep(5);
+        cache.get(1L, loader);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    public void cachesMissesOnlyWhenAsked() {
+        EntityCache<Person> negative = new EntityCache<>(10, Duration.ZERO, true);
+        assertThat(negative.get(-1L, loader)).isEmpty();
+        assertThat(negative.get(-1L, loader)).isEmpty();
+        assertThat(loads).hasValue(1);
+
+        EntityCache<Person> positiveOnly = new EntityCache<>(10);
+        positiveOnly.get(-1L, loader);
+        positiveOnly.get(-1L, loader);
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    public void invalidateForcesReload() {
+        EntityCache<Person> cache = new EntityCache<>(10);
+        cache.get(1L, loader);
+        cache.invalidate(1L);
+        cache.get(1L, loader);
+        assertThat(loads).hasValue(2);
+    }
+}
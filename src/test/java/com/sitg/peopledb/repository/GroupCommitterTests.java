@@ -0,0 +1,120 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.DataAccessException;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTransientException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GroupCommitterTests {
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC);
+
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+    private GroupCommitter<Person> committer;
+
+    @BeforeEach
+    void setUp() {
+        database = PeopleDatabase.inMemory();
+        repo = database.newRepository();
+        committer = new GroupCommitter<>(repo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        committer.close();
+        database.close();
+    }
+
+    @Test
+    public void queuedUnitsShareOneCommit() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Person>> saves = new ArrayList<>();
+        saves.add(committer.submit(() -> {
+            awaitQuietly(release);
+            return repo.save(new Person("First", "Unit", DOB));
+        }));
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            saves.add(committer.submit(() -> repo.save(new Person("First" + n, "Last" + n, DOB))));
+        }
+        release.countDown();
+
+        assertThat(saves).allSatisfy(save -> assertThat(save.join().getId()).isNotNull());
+        assertThat(repo.count()).isEqualTo(51);
+        assertThat(committer.getTransactionCount()).isEqualTo(51);
+        assertThat(committer.getCommitCount()).isBetween(1L, 2L);
+    }
+
+    @Test
+    public void failedUnitDoesNotSpoilItsGroup() {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = committer.submit(() -> {
+            awaitQuietly(release);
+            return null;
+        });
+        CompletableFuture<Person> bad = committer.submit(() -> {
+            repo.save(new Person("Bad", "Unit", DOB));
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<Person> good = committer.submit(() -> repo.save(new Person("Good", "Unit", DOB)));
+        release.countDown();
+
+        first.join();
+        assertThat(good.join().getId()).isNotNull();
+        assertThatThrownBy(bad::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactly("Good");
+    }
+
+    @Test
+    public void unitLosingLockConflictRunsAgainInNextGroup() {
+        AtomicInteger runs = new AtomicInteger();
+        Person saved = committer.inTransaction(() -> {
+            Person person = repo.save(new Person("John", "Smith", DOB));
+            if (runs.incrementAndGet() == 1) {
+                throw new DataAccessException("Lock timeout", new SQLTransientException("locked"));
+            }
+            return person;
+        });
+
+        assertThat(runs).hasValue(2);
+        assertThat(repo.findAll()).extracting(Person::getId).containsExactly(saved.getId());
+        assertThat(committer.getCommitCount()).isEqualTo(2);
+        assertThat(committer.getTransactionCount()).isEqualTo(1);
+
+        assertThatThrownBy(() -> committer.inTransaction(() -> {
+            runs.incrementAndGet();
+            throw new DataAccessException("Lock timeout", new SQLTransientException("locked"));
+        })).isInstanceOf(DataAccessException.class);
+        assertThat(runs).hasValue(2 + CRUDRepository.DEFAULT_TRANSACTION_ATTEMPTS);
+    }
+
+    @Test
+    public void inTransactionBlocksUntilCommittedAndCloseStopsIt() {
+        Person john = committer.inTransaction(() -> repo.save(new Person("John", "Smith", DOB)));
+        assertThat(repo.findById(john.getId())).isPresent();
+
+        committer.close();
+        assertThatThrownBy(() -> committer.inTransaction(() -> {})).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
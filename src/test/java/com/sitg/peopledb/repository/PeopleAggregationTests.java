@@ -0,0 +1,90 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.metrics.InMemoryMetrics;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleAggregationTests {
+    private static final String URL = "jdbc:h2:mem:aggregationtest;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(URL);
+        PeopleSchema.create(connection);
+        repo = new PeopleRepository(connection);
+        repo.saveAll(List.of(
+                person("Smith", 1980, 6, 15, "50000"),
+                person("Smith", 1980, 1, 1, "70000"),
+                person("Jones", 1990, 3, 10, "40000"),
+                person("Jones", 1990, 12, 31, "60000"),
+                person("Brown", 2001, 7, 4, "30000"),
+                person("Young", 2030, 1, 1, "0")));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.createStatement().execute("DROP TABLE PEOPLE");
+        connection.close();
+    }
+
+    private static Person person(String lastName, int year, int month, int day, String salary) {
+        Person person = new Person("First", lastName, ZonedDateTime.of(year, month, day, 12, 0, 0, 0, ZoneOffset.UTC));
+        person.setSalary(new BigDecimal(salary));
+        return person;
+    }
+
+    @Test
+    public void canAggregateWholeTable() {
+        SalaryStats<Void> stats = repo.getSalaryStats();
+        assertThat(stats.group()).isNull();
+        assertThat(stats.count()).isEqualTo(6);
+        assertThat(stats.total()).isEqualByComparingTo("250000");
+        assertThat(stats.min()).isEqualByComparingTo("0");
+        assertThat(stats.max()).isEqualByComparingTo("70000");
+    }
+
+    @Test
+    public void canGroupByDobYear() {
+        List<SalaryStats<Integer>> byYear = repo.getSalaryStatsByDobYear();
+        assertThat(byYear).extracting(SalaryStats::group).containsExactly(1980, 1990, 2001, 2030);
+        assertThat(byYear.get(0).count()).isEqualTo(2);
+        assertThat(byYear.get(0).average()).isEqualByComparingTo("60000");
+        assertThat(byYear.get(1).min()).isEqualByComparingTo("40000");
+    }
+
+    @Test
+    public void canGroupByLastName() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+        List<SalaryStats<String>> byName = repo.getSalaryStatsByLastName();
+        assertThat(byName).extracting(SalaryStats::group).containsExactly("Brown", "Jones", "Smith", "Young");
+        assertThat(byName.get(2).total()).isEqualByComparingTo("120000");
+        assertThat(metrics.getStats(PeopleRepository.SALARY_STATS_BY_LAST_NAME_SQL).rows()).isEqualTo(4);
+    }
+
+    @Test
+    public void canGroupByAgeBracket() {
+        List<SalaryStats<Integer>> byAge = repo.getSalaryStatsByAgeBracket(10, LocalDate.of(2020, 6, 15));
+        // on 2020-06-15: Smiths are 40 and 40, Joneses 30 and 29, Brown 18, Young isn't born yet
+        assertThat(byAge).extracting(SalaryStats::group).containsExactly(10, 20, 30, 40);
+        assertThat(byAge).extracting(SalaryStats::count).containsExactly(1L, 1L, 1L, 2L);
+        assertThat(byAge.get(1).total()).isEqualByComparingTo("60000");
+        assertThat(byAge.get(2).total()).isEqualByComparingTo("40000");
+    }
+}
@@ -0,0 +1,150 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.OptimisticLockException;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleChangeFeedTests {
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC);
+
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        database = PeopleDatabase.inMemory();
+        repo = database.newRepository();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void versionStartsAtOneAndCountsUpdates() {
+        Person john = repo.save(new Person("John", "Smith", DOB));
+        assertThat(john.getVersion()).isEqualTo(CRUDRepository.INITIAL_VERSION);
+
+        john.setSalary(new BigDecimal("1000"));
+        repo.update(john);
+        assertThat(john.getVersion()).isEqualTo(2);
+        assertThat(repo.findById(john.getId()).get().getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void staleUpdateIsRejected() {
+        Person saved = repo.save(new Person("John", "Smith", DOB));
+        Person first = repo.findById(saved.getId()).get();
+        Person second = repo.findById(saved.getId()).get();
+        first.setFirstName("Johnny");
+        repo.update(first);
+
+        second.setLastName("Smythe");
+        assertThatThrownBy(() -> repo.update(second))
+                .isInstanceOf(OptimisticLockException.class)
+                .hasMessageContaining("ID %d at version 1".formatted(saved.getId()));
+        Person found = repo.findById(saved.getId()).get();
+        assertThat(found.getFirstName()).isEqualTo("Johnny");
+        assertThat(found.getLastName()).isEqualTo("Smith");
+        assertThat(second.getChangedProperties()).containsExactly("lastName");
+    }
+
+    @Test
+    public void updateAllAppliesFreshEntitiesAndReportsStaleOnes() {
+        List<Person> saved = repo.saveAll(List.of(new Person("Ann", "A", DOB), new Person("Bob", "B", DOB)));
+        Person staleBob = repo.findById(saved.get(1).getId()).get();
+        saved.get(1).setFirstName("Robert");
+        repo.update(saved.get(1));
+
+        saved.get(0).setFirstName("Anna");
+        staleBob.setFirstName("Bobby");
+        assertThatThrownBy(() -> repo.updateAll(List.of(saved.get(0), staleBob)))
+                .isInstanceOf(OptimisticLockException.class)
+                .hasMessageContaining("ID " + staleBob.getId());
+        assertThat(repo.findById(saved.get(0).getId()).get().getFirstName()).isEqualTo("Anna");
+        assertThat(saved.get(0).getVersion()).isEqualTo(2);
+        assertThat(repo.findById(staleBob.getId()).get().getFirstName()).isEqualTo("Robert");
+    }
+
+    @Test
+    public void updateWithoutVersionIsNotChecked() {
+        Person saved = repo.save(new Person("John", "Smith", DOB));
+        Person blind = new Person(saved.getId(), "Johnny", "Smith", DOB);
+
+        repo.update(blind);
+        assertThat(blind.getVersion()).isNull();
+        assertThat(repo.findById(saved.getId()).get().getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void feedReturnsChangesInOrder() {
+        List<Person> saved = repo.saveAll(List.of(new Person("Ann", "A", DOB), new Person("Bob", "B", DOB),
+                new Person("Cat", "C", DOB)));
+        ChangeBatch<Person> all = repo.findModifiedSince(0, 10);
+        assertThat(all.changed()).extracting(Person::getFirstName).containsExactly("Ann", "Bob", "Cat");
+        assertThat(all.deletedIds()).isEmpty();
+        assertThat(all.hasMore()).isFalse();
+
+        saved.get(0).setFirstName("Anna");
+        repo.update(saved.get(0));
+        repo.delete(saved.get(1));
+        ChangeBatch<Person> since = repo.findModifiedSince(all.watermark(), 10);
+        assertThat(since.changed()).extracting(Person::getFirstName).containsExactly("Anna");
+        assertThat(since.changed().get(0).getVersion()).isEqualTo(2);
+        assertThat(since.deletedIds()).containsExactly(saved.get(1).getId());
+
+        assertThat(repo.findModifiedSince(since.watermark(), 10).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void feedPagesThroughChanges() {
+        for (int i = 0; i < 5; i++) {
+            repo.save(new Person("Person" + i, "Smith", DOB));
+        }
+        ChangeBatch<Person> first = repo.findModifiedSince(0, 2);
+        ChangeBatch<Person> second = repo.findModifiedSince(first.watermark(), 2);
+        ChangeBatch<Person> third = repo.findModifiedSince(second.watermark(), 2);
+
+        assertThat(first.hasMore()).isTrue();
+        assertThat(second.hasMore()).isTrue();
+        assertThat(third.hasMore()).isFalse();
+        assertThat(third.changed()).extracting(Person::getFirstName).containsExactly("Person4");
+    }
+
+    @Test
+    public void feedSeesWritesThatBypassTheRepository() throws SQLException {
+        Person john = repo.save(new Person("John", "Smith", DOB));
+        long watermark = repo.findModifiedSince(0, 10).watermark();
+        try (Connection connection = database.openConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE PEOPLE SET SALARY=5 WHERE ID=" + john.getId());
+        }
+
+        assertThat(repo.findModifiedSince(watermark, 10).changed()).extracting(Person::getId).containsExactly(john.getId());
+    }
+
+    @Test
+    public void canPurgeTombstones() {
+        List<Person> saved = repo.saveAll(List.of(new Person("Ann", "A", DOB), new Person("Bob", "B", DOB)));
+        repo.deleteAllById(List.of(saved.get(0).getId()));
+        long watermark = repo.findModifiedSince(0, 10).watermark();
+        repo.delete(saved.get(1));
+
+        assertThat(repo.purgeTombstones(watermark)).isEqualTo(1);
+        assertThat(repo.findModifiedSince(0, 10).deletedIds()).containsExactly(saved.get(1).getId());
+    }
+}
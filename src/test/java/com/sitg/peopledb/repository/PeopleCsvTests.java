@@ -0,0 +1,129 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.UnableToImportException;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PeopleCsvTests {
+    private static final String URL = "jdbc:h2:mem:csvtest;DB_CLOSE_DELAY=-1";
+
+    @TempDir
+    Path dir;
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(URL);
+        PeopleSchema.create(connection);
+        repo = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.createStatement().execute("DROP TABLE PEOPLE");
+        connection.close();
+    }
+
+    @Test
+    public void canImportCsv() throws IOException {
+        Path file = Files.writeString(dir.resolve("people.csv"), """
+                first_name,last_name,dob,salary
+                John,Smith,1980-11-15T15:15:00-06:00,73000.50
+                "Mary ""Molly""\","O'Brien, Jr",1990-01-02,
+                Zo\u00eb,Nguyen,2001-03-04T05:06:07.5Z,120000\r
+                """);
+        TransferResult result = new PeopleCsv(repo, 2).importFrom(file);
+
+        assertThat(result.rows()).isEqualTo(3);
+        assertThat(result.rowsPerSecond()).isPositive();
+        List<Person> people = repo.findAll().stream().sorted(Comparator.comparing(Person::getId)).toList();
+        assertThat(people).extracting(Person::getFirstName).containsExactly("John", "Mary \"Molly\"", "Zo\u00eb");
+        assertThat(people.get(0).getDob()).isEqualTo(ZonedDateTime.of(1980, 11, 15, 21, 15, 0, 0, ZoneOffset.UTC));
+        assertThat(people.get(0).getSalary()).isEqualByComparingTo("73000.50");
+        assertThat(people.get(1).getLastName()).isEqualTo("O'Brien, Jr");
+        assertThat(people.get(1).getSalary()).isEqualByComparingTo("0");
+        assertThat(people.get(2).getDob().getNano()).isEqualTo(500_000_000);
+    }
+
+    @Test
+    public void importHandlesLinesSpanningReads() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        int count = 3 * PeopleCsv.BUFFER_SIZE / 40;
+        for (int i = 0; i < count; i++) {
+            csv.append("First").append(i).append(",Last").append(i).append(",1970-01-01T00:00:00Z,").append(i).append('\n');
+        }
+        Path file = Files.writeString(dir.resolve("big.csv"), csv);
+
+        assertThat(new PeopleCsv(repo, 1000).importFrom(file).rows()).isEqualTo(count);
+        assertThat(repo.count()).isEqualTo(count);
+    }
+
+    @Test
+    public void exportRoundTrips() throws IOException {
+        Person john = new Person("John", "Smith, \"Jack\"", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 123, ZoneOffset.ofHours(-6)));
+        john.setSalary(new BigDecimal("1234.56"));
+        repo.save(john);
+        repo.save(new Person("Mary", "Jones", ZonedDateTime.of(1, 2, 3, 4, 5, 6, 0, ZoneOffset.UTC)));
+        Path file = dir.resolve("export.csv");
+
+        assertThat(new PeopleCsv(repo).exportTo(file).rows()).isEqualTo(2);
+        assertThat(Files.readAllLines(file)).first().isEqualTo(PeopleCsv.HEADER);
+
+        List<Person> before = repo.findAll();
+        repo.deleteAllById(before.stream().map(Person::getId).toList());
+        new PeopleCsv(repo).importFrom(file);
+        List<Person> after = repo.findAll();
+        assertThat(after).usingRecursiveFieldByFieldElementComparatorIgnoringFields("id", "salary").containsExactlyInAnyOrderElementsOf(before);
+        assertThat(after).extracting(Person::getSalary).usingElementComparator(BigDecimal::compareTo)
+                .containsExactlyInAnyOrder(new BigDecimal("1234.56"), BigDecimal.ZERO);
+    }
+
+    @Test
+    public void nullColumnsRoundTrip() throws IOException {
+        repo.save(new Person(null, null, null));
+        repo.save(new Person("", "Nguyen", null));
+        Path file = dir.resolve("nulls.csv");
+
+        new PeopleCsv(repo).exportTo(file);
+        assertThat(Files.readAllLines(file)).containsExactlyInAnyOrder(PeopleCsv.HEADER, ",,,0.00", "\"\",Nguyen,,0.00");
+
+        repo.deleteAllById(repo.findAll().stream().map(Person::getId).toList());
+        assertThat(new PeopleCsv(repo).importFrom(file).rows()).isEqualTo(2);
+        assertThat(repo.findAll()).extracting(Person::getFirstName, Person::getLastName, Person::getDob)
+                .containsExactlyInAnyOrder(tuple(null, null, null), tuple("", "Nguyen", null));
+    }
+
+    @Test
+    public void badLineReportsLineNumberAndKeepsEarlierChunks() throws IOException {
+        Path file = Files.writeString(dir.resolve("bad.csv"), """
+                John,Smith,1980-11-15,1
+                Mary,Jones,1981-01-01,2
+                Bill,Bad,1982-13-01,3
+                """);
+
+        assertThatThrownBy(() -> new PeopleCsv(repo, 2).importFrom(file))
+                .isInstanceOf(UnableToImportException.class)
+                .hasMessageStartingWith("Line 3:");
+        assertThat(repo.count()).isEqualTo(2);
+    }
+}
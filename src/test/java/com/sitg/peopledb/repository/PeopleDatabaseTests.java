@@ -0,0 +1,82 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleDatabaseTests {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void inMemoryDatabaseStartsWithSchema() {
+        try (PeopleDatabase database = PeopleDatabase.inMemory()) {
+            PeopleRepository repo = database.newRepository();
+            repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC)));
+            assertThat(repo.findByLastName("Smith")).hasSize(1);
+            assertThat(database.getStartupTime()).isPositive();
+        }
+    }
+
+    @Test
+    public void closingInMemoryDatabaseDiscardsIt() {
+        PeopleDatabase discarded = PeopleDatabase.inMemory("discarded");
+        discarded.newRepository().save(new Person("John", "Smith", ZonedDateTime.now()));
+        discarded.close();
+        discarded.close();  // closing again does nothing
+        try (PeopleDatabase database = PeopleDatabase.inMemory("discarded")) {
+            assertThat(database.newRepository().count()).isZero();
+        }
+    }
+
+    @Test
+    public void canPreloadCsvSnapshot() throws IOException {
+        Path csv = Files.writeString(dir.resolve("people.csv"), """
+                FIRST_NAME,LAST_NAME,DOB,SALARY
+                John,Smith,1980-11-15,50000
+                Mary,Jones,1990-01-02,60000
+                """);
+        try (PeopleDatabase database = PeopleDatabase.inMemory("csvsnapshot", csv)) {
+            assertThat(database.newRepository().count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void scriptSnapshotRoundTrips() {
+        Path script = dir.resolve("people.sql");
+        try (PeopleDatabase database = PeopleDatabase.inMemory()) {
+            database.newRepository().saveAll(List.of(
+                    new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC)),
+                    new Person("Mary", "Jones", ZonedDateTime.of(1990, 1, 2, 0, 0, 0, 0, ZoneOffset.UTC))));
+            database.writeSnapshot(script);
+        }
+        try (PeopleDatabase database = PeopleDatabase.inMemory("scriptsnapshot", script)) {
+            PeopleRepository repo = database.newRepository();
+            assertThat(repo.findByLastName("Jones")).extracting(Person::getFirstName).containsExactly("Mary");
+            Person next = repo.save(new Person("Bill", "Brown", ZonedDateTime.now()));
+            assertThat(next.getId()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void fileDatabaseLoadsSnapshotOnlyOnce() throws IOException {
+        Path csv = Files.writeString(dir.resolve("people.csv"), "John,Smith,1980-11-15,50000\n");
+        Path file = dir.resolve("people");
+        try (PeopleDatabase database = PeopleDatabase.file(file, csv)) {
+            assertThat(database.isInMemory()).isFalse();
+            assertThat(database.newRepository().count()).isEqualTo(1);
+        }
+        try (PeopleDatabase database = PeopleDatabase.file(file, csv)) {
+            assertThat(database.newRepository().count()).isEqualTo(1);
+        }
+    }
+}
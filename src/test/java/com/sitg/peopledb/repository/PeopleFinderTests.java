@@ -0,0 +1,129 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleFinderTests {
+    private static final String URL = "jdbc:h2:mem:findertest;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        try {
+            connection = DriverManager.getConnection(URL);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        PeopleSchema.create(connection);
+        PeopleSchema.create(connection);  // a second run finds everything in place
+        repo = new PeopleRepository(connection);
+        repo.saveAll(List.of(
+                person("John", "Smith", 1980),
+                person("Anna", "Smith", 1985),
+                person("John", "Jones", 1990),
+                person("Bill", "Smith", 2000)));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.createStatement().execute("DROP TABLE PEOPLE");
+        connection.close();
+    }
+
+    private static Person person(String firstName, String lastName, int year) {
+        return new Person(firstName, lastName, ZonedDateTime.of(year, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void canFindByLastName() {
+        assertThat(repo.findByLastName("Smith")).extracting(Person::getFirstName).containsExactly("Anna", "Bill", "John");
+        assertThat(repo.findByLastName("Smith", 2)).extracting(Person::getFirstName).containsExactly("Anna", "Bill");
+        assertThat(repo.findByLastName("Nobody")).isEmpty();
+    }
+
+    @Test
+    public void canFindByFirstAndLastName() {
+        List<Person> found = repo.findByFirstAndLastName("John", "Smith");
+        assertThat(found).hasSize(1);
+        assertThat(found.get(0).getDob().getYear()).isEqualTo(1980);
+    }
+
+    @Test
+    public void canFindByDobBetween() {
+        ZonedDateTime from = ZonedDateTime.of(1985, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        ZonedDateTime to = ZonedDateTime.of(1999, 12, 31, 17, 59, 59, 0, ZoneOffset.ofHours(-6));
+        assertThat(repo.findByDobBetween(from, to)).extracting(Person::getFirstName).containsExactly("Anna", "John");
+        assertThat(repo.findByDobBetween(from, to, 1)).extracting(Person::getFirstName).containsExactly("Anna");
+        // one second later the bound is 2000-01-01T00:00Z, Bill's DOB, and the bounds are inclusive
+        assertThat(repo.findByDobBetween(from, to.plusSeconds(1))).hasSize(3);
+    }
+
+    @Test
+    public void findByLastNameUsesIndex() throws SQLException {
+        assertThat(explain(PeopleRepository.FIND_BY_LAST_NAME_SQL)).contains("IDX_PEOPLE_LAST_NAME: LAST_NAME =").doesNotContain("tableScan");
+    }
+
+    @Test
+    public void findByFirstAndLastNameUsesIndex() throws SQLException {
+        assertThat(explain(PeopleRepository.FIND_BY_FIRST_AND_LAST_NAME_SQL))
+                .contains("IDX_PEOPLE_LAST_NAME: LAST_NAME =").contains("AND FIRST_NAME =").doesNotContain("tableScan");
+    }
+
+    @Test
+    public void findByDobBetweenUsesIndex() throws SQLException {
+        assertThat(explain(PeopleRepository.FIND_BY_DOB_BETWEEN_SQL + " LIMIT ?")).contains("IDX_PEOPLE_DOB_ID: DOB >=").doesNotContain("tableScan");
+    }
+
+    @Test
+    public void pagingBySortKeySeeksThroughIndex() throws SQLException {
+        List<String> statements = new ArrayList<>();
+        repo.setListener(new RepositoryListener() {
+            @Override
+            public void onSuccess(String sql, long elapsedNanos, long rows) {
+                statements.add(sql);
+            }
+        });
+        repo.findPage(PeopleRepository.BY_LAST_NAME, null, 2);
+        repo.findPage(PeopleRepository.BY_LAST_NAME, new PageToken("Jones", 0), 2);
+        repo.findPage(PeopleRepository.BY_LAST_NAME, PageToken.afterId(0), 2);
+        repo.findPage(PeopleRepository.BY_DOB, null, 2);
+        repo.findPage(PeopleRepository.BY_DOB, new PageToken(LocalDateTime.of(1985, 1, 1, 0, 0), 0), 2);
+        repo.findPage(PeopleRepository.BY_DOB, PageToken.afterId(0), 2);
+
+        assertThat(statements).hasSize(8);
+        for (String sql : statements) {
+            String plan = explain(sql);
+            assertThat(plan).as(sql).contains("index sorted").doesNotContain("tableScan");
+            if (sql.contains(" >= ?")) {
+                assertThat(plan).as(sql).containsPattern("IDX_PEOPLE_(LAST_NAME|DOB)_ID: (LAST_NAME|DOB) >=");
+            } else if (sql.contains(" IS NULL AND ID > ?")) {
+                assertThat(plan).as(sql).containsPattern("IDX_PEOPLE_(LAST_NAME|DOB)_ID: (LAST_NAME|DOB) IS NULL\\s+AND ID >");
+            }
+        }
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleNameIndexTests {
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC);
+
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+    private Person annSmith;
+    private Person bobAnderson;
+    private Person smithSmithers;
+
+    @BeforeEach
+    void setUp() {
+        database = PeopleDatabase.inMemory();
+        repo = database.newRepository();
+        annSmith = new Person("Ann", "Smith", DOB);
+        bobAnderson = new Person("Bob", "Anderson", DOB);
+        smithSmithers = new Person("Smith", "Smithers", DOB);
+        repo.saveAll(List.of(annSmith, bobAnderson, smithSmithers));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void findsByPrefixOfEitherName() {
+        PeopleNameIndex index = PeopleNameIndex.attach(repo);
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getDistinctNameCount()).isEqualTo(5);
+        assertThat(index.findIdsByPrefix("an", 10)).containsExactly(bobAnderson.getId(), annSmith.getId());
+        assertThat(index.findIdsByPrefix("SMITH", 10)).containsExactly(annSmith.getId(), smithSmithers.getId());
+        assertThat(index.findIdsByPrefix("smith", 1)).containsExactly(annSmith.getId());
+        assertThat(index.findIdsByPrefix("zz", 10)).isEmpty();
+        assertThatThrownBy(() -> index.findIdsByPrefix("a", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void followsRepositoryWrites() {
+        PeopleNameIndex index = PeopleNameIndex.attach(repo);
+
+        Person cat = repo.save(new Person("Cat", "Andrews", DOB));
+        assertThat(index.findIdsByPrefix("and", 10)).containsExactly(bobAnderson.getId(), cat.getId());
+
+        bobAnderson.setLastName("Brown");
+        repo.update(bobAnderson);
+        assertThat(index.findIdsByPrefix("and", 10)).containsExactly(cat.getId());
+        assertThat(index.findIdsByPrefix("br", 10)).containsExactly(bobAnderson.getId());
+
+        repo.delete(cat);
+        repo.deleteAllById(List.of(annSmith.getId()));
+        assertThat(index.findIdsByPrefix("a", 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void waitsForTransactionToCommit() {
+        PeopleNameIndex index = PeopleNameIndex.attach(repo);
+
+        repo.runInTransaction(() -> {
+            repo.save(new Person("Dan", "Doe", DOB));
+            assertThat(index.findIdsByPrefix("d", 10)).isEmpty();
+        });
+        assertThat(index.findIdsByPrefix("d", 10)).hasSize(1);
+
+        assertThatThrownBy(() -> repo.runInTransaction(() -> {
+            repo.save(new Person("Eve", "Evans", DOB));
+            throw new IllegalStateException("rolled back");
+        })).hasMessage("rolled back");
+        assertThat(index.findIdsByPrefix("e", 10)).isEmpty();
+    }
+}
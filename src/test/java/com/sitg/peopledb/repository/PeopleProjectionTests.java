@@ -0,0 +1,100 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.OptimisticLockException;
+import com.sitg.peopledb.model.Person;
+import com.sitg.peopledb.model.PersonName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleProjectionTests {
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+    private final List<String> statements = new ArrayList<>();
+    private Person john;
+
+    @BeforeEach
+    void setUp() {
+        database = PeopleDatabase.inMemory();
+        repo = database.newRepository();
+        john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC));
+        john.setSalary(new BigDecimal("73000.50"));
+        repo.saveAll(List.of(john, new Person("Mary", "Jones", ZonedDateTime.of(1990, 1, 2, 0, 0, 0, 0, ZoneOffset.UTC))));
+        repo.setListener(new RepositoryListener() {
+            @Override
+            public void onSuccess(String sql, long nanos, long rows) {
+                statements.add(sql);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void projectionSelectsOnlyItsColumns() {
+        assertThat(repo.findAllAs(PeopleRepository.NAMES)).containsExactlyInAnyOrder(
+                new PersonName(john.getId(), "John", "Smith"), new PersonName(john.getId() + 1, "Mary", "Jones"));
+        assertThat(repo.findByIdAs(john.getId(), PeopleRepository.NAMES)).contains(new PersonName(john.getId(), "John", "Smith"));
+        assertThat(repo.findByIdAs(-1L, PeopleRepository.NAMES)).isEmpty();
+        try (Stream<PersonName> names = repo.streamAllAs(PeopleRepository.NAMES)) {
+            assertThat(names).extracting(PersonName::lastName).containsExactlyInAnyOrder("Smith", "Jones");
+        }
+        assertThat(statements).hasSize(4).allMatch(sql -> sql.startsWith("SELECT ID, FIRST_NAME, LAST_NAME FROM PEOPLE"));
+        assertThatThrownBy(() -> new Projection<>(List.of("ID; DROP TABLE PEOPLE"), rs -> row -> null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void lazyPersonLoadsTheRestOfItsRowOnce() {
+        Person lazy = repo.findAllLazily("lastName").stream()
+                .filter(person -> person.getId().equals(john.getId())).findFirst().orElseThrow();
+        assertThat(lazy.getLastName()).isEqualTo("Smith");
+        int hashBeforeLoad = lazy.hashCode();
+        assertThat(lazy).isEqualTo(john).hasSameHashCodeAs(john)
+                .hasToString("Person{id=%d, firstName='null', lastName='Smith', dob=null}".formatted(john.getId()));
+        assertThat(statements).containsExactly("SELECT ID, VERSION, LAST_NAME FROM PEOPLE");
+
+        assertThat(lazy.getSalary()).isEqualByComparingTo("73000.50");
+        assertThat(lazy.getFirstName()).isEqualTo("John");
+        assertThat(lazy).isEqualTo(john);
+        assertThat(lazy.hashCode()).isEqualTo(hashBeforeLoad);
+        assertThat(statements).hasSize(2).last().isEqualTo(PeopleRepository.FIND_BY_ID_SQL);
+        assertThat(lazy.getChangedProperties()).isEmpty();
+    }
+
+    @Test
+    public void lazyPersonUpdatesOnlyWhatChanged() {
+        Person lazy = repo.findAllLazily("firstName").get(0);
+        lazy.setSalary(new BigDecimal("1.00"));
+        repo.update(lazy);
+
+        assertThat(statements).hasSize(2).last().isEqualTo("UPDATE PEOPLE SET SALARY=?, VERSION=VERSION+1 WHERE ID=? AND VERSION=?");
+        Person reloaded = repo.findById(lazy.getId()).orElseThrow();
+        assertThat(reloaded.getSalary()).isEqualByComparingTo("1.00");
+        assertThat(reloaded.getLastName()).isEqualTo(lazy.getLastName());
+    }
+
+    @Test
+    public void lazyLoadFailsIfRowChangedInBetween() {
+        Person lazy = repo.findAllLazily("firstName").stream()
+                .filter(person -> person.getId().equals(john.getId())).findFirst().orElseThrow();
+        john.setLastName("Smyth");
+        repo.update(john);
+
+        assertThatThrownBy(lazy::getLastName).isInstanceOf(OptimisticLockException.class);
+        assertThatThrownBy(() -> repo.findAllLazily("middleName")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
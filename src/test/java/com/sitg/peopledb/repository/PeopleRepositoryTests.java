@@ -1,5 +1,8 @@
 package com.sitg.peopledb.repository;
 
+import com.sitg.peopledb.exception.UnableToSaveException;
+import com.sitg.peopledb.metrics.InMemoryMetrics;
+import com.sitg.peopledb.metrics.StatementStats;
 import com.sitg.peopledb.model.Person;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,24 +10,28 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PeopleRepositoryTests {
 
+    private PeopleDatabase database;
     private Connection connection;
     private PeopleRepository repo;
 
     @BeforeEach
     void setUp() throws SQLException {
-        connection = DriverManager.getConnection("jdbc:h2:C:\\Users\\Owner\\Desktop\\Java\\Terry\\Chapt12\\dBeaver\\peopletest");
+        database = PeopleDatabase.inMemory();
+        connection = database.openConnection();
         connection.setAutoCommit(false);
         repo = new PeopleRepository(connection);
     }
@@ -34,6 +41,7 @@ public class PeopleRepositoryTests {
         if (connection != null ) {
             connection.close();
         }
+        database.close();
     }
 
     @Test
@@ -51,12 +59,102 @@ public class PeopleRepositoryTests {
         assertThat(savedPerson1.getId()).isNotEqualTo(savedPerson2.getId());
     }
     @Test
+    public void canSaveAllInBatches() {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            people.add(new Person("Batch" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+        long startCount = repo.count();
+        List<Person> savedPeople = repo.saveAll(people, 3);
+        assertThat(savedPeople).hasSize(7);
+        assertThat(savedPeople).extracting(Person::getId).doesNotContainNull().doesNotHaveDuplicates().isSorted();
+        assertThat(repo.count()).isEqualTo(startCount + 7);
+        assertThat(repo.findById(savedPeople.get(4).getId()).get().getFirstName()).isEqualTo("Batch4");
+    }
+    @Test
+    public void failedSaveThrowsAndIsRecorded() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+        Person tooLong = new Person("x".repeat(300), "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        assertThatThrownBy(() -> repo.save(tooLong)).isInstanceOf(UnableToSaveException.class);
+        assertThat(metrics.getStats(PeopleRepository.SAVE_PERSON_SQL).errors()).isEqualTo(1);
+    }
+    @Test
+    public void recordsStatementMetrics() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.findById(savedPerson.getId());
+        repo.findById(-1L);
+        StatementStats saves = metrics.getStats(PeopleRepository.SAVE_PERSON_SQL);
+        StatementStats finds = metrics.getStats(PeopleRepository.FIND_BY_ID_SQL);
+        assertThat(saves.count()).isEqualTo(1);
+        assertThat(saves.rows()).isEqualTo(1);
+        assertThat(finds.count()).isEqualTo(2);
+        assertThat(finds.rows()).isEqualTo(1);
+        assertThat(finds.maxNanos()).isGreaterThan(0).isGreaterThanOrEqualTo(finds.p50Nanos());
+    }
+    @Test
     public void canFindPersonById() {
         Person savedPerson = repo.save(new Person("test", "jackson", ZonedDateTime.now().truncatedTo(ChronoUnit.MILLIS)));
         Person foundPerson = repo.findById(savedPerson.getId()).get();
         assertThat(foundPerson).isEqualTo(savedPerson);
     }
     @Test
+    public void findByIdReusesCachedStatement() {
+        Person savedPerson = repo.save(new Person("test", "jackson", ZonedDateTime.now().truncatedTo(ChronoUnit.MILLIS)));
+        repo.findById(savedPerson.getId());
+        StatementCacheStats start = repo.getStatementCacheStats();
+        repo.findById(savedPerson.getId());
+        repo.findById(savedPerson.getId());
+        StatementCacheStats end = repo.getStatementCacheStats();
+        assertThat(end.misses()).isEqualTo(start.misses());
+        assertThat(end.hits()).isEqualTo(start.hits() + 2);
+    }
+    @Test
+    public void cachedFindByIdSeesUpdatesAndDeletes() throws SQLException {
+        connection.setAutoCommit(true);
+        repo.setCache(new EntityCache<>(100));
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.findById(savedPerson.getId());
+        repo.findById(savedPerson.getId());
+        assertThat(repo.getCache().getStats().hits()).isEqualTo(1);
+
+        repo.update(new Person(savedPerson.getId(), "Johnny", "Smith", savedPerson.getDob()));
+        repo.findById(savedPerson.getId());
+        assertThat(repo.getCache().getStats().loads()).isEqualTo(2);
+
+        repo.delete(savedPerson);
+        assertThat(repo.findById(savedPerson.getId())).isEmpty();
+    }
+    @Test
+    public void cachedFindByIdHandsOutCopies() throws SQLException {
+        connection.setAutoCommit(true);
+        repo.setCache(new EntityCache<>(100));
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person first = repo.findById(savedPerson.getId()).orElseThrow();
+        Person second = repo.findById(savedPerson.getId()).orElseThrow();
+        assertThat(repo.getCache().getStats().hits()).isEqualTo(1);
+        assertThat(second).isNotSameAs(first);
+
+        first.setFirstName("Johnny");
+        assertThat(second.getFirstName()).isEqualTo("John");
+        assertThat(repo.findById(savedPerson.getId()).orElseThrow().getFirstName()).isEqualTo("John");
+
+        repo.update(first);
+        assertThat(first.getVersion()).isEqualTo(2L);
+        assertThat(second.getVersion()).isEqualTo(1L);
+    }
+    @Test
+    public void findByIdSkipsTheCacheWithAutoCommitOff() {
+        repo.setCache(new EntityCache<>(100));
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.findById(savedPerson.getId());
+        repo.findById(savedPerson.getId());
+        assertThat(repo.getCache().getStats().loads()).isZero();
+        assertThat(repo.getCache().getStats().hits()).isZero();
+    }
+    @Test
     public void testPersonIdNotFound() {
         Optional<Person> foundPerson = repo.findById(-1L);
         assertThat(foundPerson).isEmpty();
@@ -72,10 +170,88 @@ public class PeopleRepositoryTests {
         repo.save(new Person("John6", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
         repo.save(new Person("John7", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
         repo.save(new Person("John8", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.save(new Person("John9", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
 
         List<Person> people = repo.findAll();
         assertThat(people.size()).isGreaterThanOrEqualTo(10);
     }
+    @Test
+    public void canStreamAll() {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        try (Stream<Person> people = repo.streamAll(1)) {
+            assertThat(people.count()).isEqualTo(repo.count());
+        }
+    }
+    @Test
+    public void closingCursorEarlyReleasesIt() {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Cursor<Person> cursor = repo.openCursor();
+        assertThat(cursor.next()).isNotNull();
+        cursor.close();
+        assertThat(cursor.isClosed()).isTrue();
+        assertThat(cursor.hasNext()).isFalse();
+    }
+    @Test
+    public void canPageById() {
+        List<Person> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(repo.save(new Person("Page" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))));
+        }
+        Page<Person> first = repo.findPage(saved.get(0).getId() - 1, 2);
+        Page<Person> second = repo.findPage(first.next(), 2);
+        Page<Person> third = repo.findPage(second.next(), 2);
+        assertThat(first.items()).extracting(Person::getFirstName).containsExactly("Page0", "Page1");
+        assertThat(second.items()).extracting(Person::getFirstName).containsExactly("Page2", "Page3");
+        assertThat(third.items()).extracting(Person::getFirstName).containsExactly("Page4");
+        assertThat(third.hasNext()).isFalse();
+    }
+    @Test
+    public void canPageByLastName() {
+        for (String lastName : List.of("Keyset3", "Keyset1", "Keyset2", "Keyset1")) {
+            repo.save(new Person("John", lastName, ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+        Page<Person> first = repo.findPage(PeopleRepository.BY_LAST_NAME, new PageToken("Keyset", 0), 3);
+        Page<Person> second = repo.findPage(PeopleRepository.BY_LAST_NAME, first.next(), 1);
+        assertThat(first.items()).extracting(Person::getLastName).containsExactly("Keyset1", "Keyset1", "Keyset2");
+        assertThat(first.items().get(0).getId()).isLessThan(first.items().get(1).getId());
+        assertThat(second.items()).extracting(Person::getLastName).containsExactly("Keyset3");
+    }
+    @Test
+    public void queriesExtendingFindAllSqlRejectItsOwnClauses() {
+        PeopleRepository filtered = new PeopleRepository(connection) {
+            @Override
+            protected String getFindAllSql() {
+                return PeopleRepository.FIND_ALL_SQL + " WHERE SALARY > 0";
+            }
+        };
+        assertThatThrownBy(() -> filtered.findPage((Long) null, 2)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> filtered.findAllById(List.of(1L))).isInstanceOf(IllegalStateException.class);
+        assertThat(repo.findPage((Long) null, 2).items()).isEmpty();
+    }
+    @Test
+    public void pagingBySortKeyIncludesNullValues() {
+        List<Long> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String lastName = i % 3 == 0 ? null : "Keyset" + (i % 4);
+            ZonedDateTime dob = i % 4 == 0 ? null : ZonedDateTime.of(1980 + i % 3, 1, 1, 0, 0, 0, 0, ZoneId.of("Z"));
+            saved.add(repo.save(new Person("Page" + i, lastName, dob)).getId());
+        }
+        for (SortKey<Person> sortKey : List.of(PeopleRepository.BY_LAST_NAME, PeopleRepository.BY_DOB)) {
+            List<Long> paged = new ArrayList<>();
+            PageToken next = null;
+            do {
+                Page<Person> page = repo.findPage(sortKey, next, 3);
+                page.items().forEach(person -> paged.add(person.getId()));
+                next = page.next();
+            } while (next != null);
+            assertThat(paged).as(sortKey.column()).containsExactlyInAnyOrderElementsOf(saved).doesNotHaveDuplicates();
+        }
+        assertThat(repo.findPage(PeopleRepository.BY_LAST_NAME, null, 4).items())
+                .extracting(Person::getLastName).containsExactly(null, null, null, null);
+    }
+
     @Test
     public void canGetCount() {
         long startCount = repo.count();
@@ -93,6 +269,36 @@ public class PeopleRepositoryTests {
         assertThat(endCount).isEqualTo(startCount - 1);
     }
 
+    @Test
+    public void canDeleteMultiple() {
+        Person p1 = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person p2 = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person p3 = repo.save(new Person("John2", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        long startCount = repo.count();
+        repo.delete(p1, p3);
+        assertThat(repo.count()).isEqualTo(startCount - 2);
+        assertThat(repo.findById(p2.getId())).isPresent();
+    }
+
+    @Test
+    public void canFindAllById() {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            people.add(new Person("Many" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+        List<Long> ids = new ArrayList<>(repo.saveAll(people).stream().map(Person::getId).toList());
+        ids.add(-1L);
+        List<Person> found = repo.findAllById(ids);
+        assertThat(found).hasSize(150);
+        assertThat(found).extracting(Person::getId).doesNotHaveDuplicates().doesNotContain(-1L);
+
+        repo.findAllById(ids.subList(0, 5));
+        StatementCacheStats start = repo.getStatementCacheStats();
+        repo.findAllById(ids.subList(10, 13));
+        repo.findAllById(ids.subList(20, 27));
+        assertThat(repo.getStatementCacheStats().misses()).isEqualTo(start.misses());
+    }
+
     @Test
     public void canUpdate() {
         Person savedPerson = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")).truncatedTo(ChronoUnit.MILLIS)));
@@ -107,4 +313,36 @@ public class PeopleRepositoryTests {
         assertThat(p2.getSalary()).isNotEqualTo(p1.getSalary());
 
     }
+
+    @Test
+    public void updateWritesOnlyChangedColumns() {
+        Person saved = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+
+        saved.setSalary(new BigDecimal("81000.00"));
+        repo.update(saved);
+        saved.setSalary(new BigDecimal("82000.00"));
+        repo.update(saved);
+
+        assertThat(metrics.getAllStats()).containsOnlyKeys("UPDATE PEOPLE SET SALARY=?, VERSION=VERSION+1 WHERE ID=? AND VERSION=?");
+        assertThat(repo.getStatementCacheStats().hits()).isGreaterThanOrEqualTo(1);
+        Person found = repo.findById(saved.getId()).get();
+        assertThat(found.getSalary()).isEqualByComparingTo("82000");
+        assertThat(found.getFirstName()).isEqualTo("John");
+    }
+
+    @Test
+    public void updateSkipsUnchangedEntity() {
+        Person saved = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person found = repo.findById(saved.getId()).get();
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+
+        repo.update(saved);
+        found.setLastName("Smith");
+        repo.update(found);
+
+        assertThat(metrics.getAllStats()).isEmpty();
+    }
 }
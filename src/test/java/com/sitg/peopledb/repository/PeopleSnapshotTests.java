@@ -0,0 +1,115 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleSnapshotTests {
+    private PeopleDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        database = PeopleDatabase.inMemory();
+        repo = database.newRepository();
+        repo.saveAll(List.of(
+                person("Ann", "Smith", ZonedDateTime.of(1980, 6, 15, 23, 30, 0, 0, ZoneOffset.ofHours(-6)), "50000.25"),
+                person("Bob", "Smith", ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), "70000"),
+                person("Cat", "Jones", ZonedDateTime.of(1990, 3, 10, 8, 15, 30, 250_000_000, ZoneOffset.UTC), "40000"),
+                person("Smith", "Jones", ZonedDateTime.of(1990, 12, 31, 12, 0, 0, 0, ZoneOffset.UTC), "60000.10"),
+                person("Dan", "Brown", ZonedDateTime.of(2001, 7, 4, 12, 0, 0, 0, ZoneOffset.UTC), "0")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    private static Person person(String firstName, String lastName, ZonedDateTime dob, String salary) {
+        Person person = new Person(firstName, lastName, dob);
+        person.setSalary(new BigDecimal(salary));
+        return person;
+    }
+
+    @Test
+    public void materializesTheSamePeople() {
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+
+        assertThat(snapshot.size()).isEqualTo(5);
+        assertThat(snapshot.getDistinctNameCount()).isEqualTo(7);
+        List<Person> people = IntStream.range(0, snapshot.size()).mapToObj(snapshot::get).toList();
+        assertThat(people).containsExactlyInAnyOrderElementsOf(repo.findAll());
+        assertThat(people).extracting(Person::getSalary).usingElementComparator(BigDecimal::compareTo)
+                .contains(new BigDecimal("50000.25"), new BigDecimal("60000.10"));
+        assertThat(people.get(0).getChangedProperties()).isEmpty();
+    }
+
+    @Test
+    public void canFilter() {
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+
+        assertThat(snapshot.findByLastName("Smith")).extracting(Person::getFirstName).containsExactlyInAnyOrder("Ann", "Bob");
+        assertThat(snapshot.findByLastName("Nobody")).isEmpty();
+        // Ann was born on June 16th in UTC
+        assertThat(snapshot.findByDobBetween(LocalDate.of(1980, 6, 16), LocalDate.of(1990, 3, 10)))
+                .extracting(Person::getFirstName).containsExactlyInAnyOrder("Ann", "Cat");
+        assertThat(snapshot.getSalaryStats(LocalDate.of(1990, 1, 1), LocalDate.of(1990, 12, 31)).total())
+                .isEqualByComparingTo("100000.10");
+    }
+
+    @Test
+    public void aggregatesMatchTheDatabase() {
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+
+        assertThat(snapshot.getSalaryStats()).isEqualTo(repo.getSalaryStats());
+        assertThat(snapshot.getSalaryStatsByDobYear()).isEqualTo(repo.getSalaryStatsByDobYear());
+        assertThat(snapshot.getSalaryStatsByLastName()).isEqualTo(repo.getSalaryStatsByLastName());
+    }
+
+    @Test
+    public void groupsMissingLastNamesFirst() {
+        repo.save(person("Eve", null, ZonedDateTime.of(1985, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), "10000"));
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+
+        assertThat(snapshot.getSalaryStatsByLastName()).first().extracting(SalaryStats::group).isNull();
+        assertThat(snapshot.getSalaryStatsByLastName()).isEqualTo(repo.getSalaryStatsByLastName());
+        assertThat(snapshot.parallel().getSalaryStatsByLastName()).isEqualTo(repo.getSalaryStatsByLastName());
+    }
+
+    @Test
+    public void parallelScansMatchSequential() {
+        for (int i = 0; i < 5_000; i++) {
+            repo.save(person("First" + i, "Last" + i % 37, ZonedDateTime.of(1950 + i % 60, 1 + i % 12, 1, 0, 0, 0, 0, ZoneOffset.UTC), Integer.toString(i)));
+        }
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+        PeopleSnapshot parallel = snapshot.parallel();
+
+        assertThat(parallel.isParallel()).isTrue();
+        assertThat(parallel.getSalaryStats()).isEqualTo(snapshot.getSalaryStats());
+        assertThat(parallel.getSalaryStatsByDobYear()).isEqualTo(snapshot.getSalaryStatsByDobYear());
+        assertThat(parallel.getSalaryStatsByLastName()).isEqualTo(repo.getSalaryStatsByLastName());
+        assertThat(parallel.findByLastName("Last5")).containsExactlyElementsOf(snapshot.findByLastName("Last5"));
+    }
+
+    @Test
+    public void doesNotSeeLaterChanges() {
+        PeopleSnapshot snapshot = PeopleSnapshot.load(repo);
+        repo.deleteAllById(repo.findAll().stream().map(Person::getId).toList());
+        PeopleSnapshot empty = PeopleSnapshot.load(repo);
+
+        assertThat(snapshot.size()).isEqualTo(5);
+        assertThat(empty.size()).isZero();
+        assertThat(empty.getSalaryStats()).isEqualTo(repo.getSalaryStats());
+        assertThat(empty.getSalaryStatsByDobYear()).isEmpty();
+    }
+}
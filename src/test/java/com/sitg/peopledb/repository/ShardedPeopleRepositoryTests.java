@@ -0,0 +1,79 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedPeopleRepositoryTests {
+    @TempDir
+    Path dir;
+
+    private static List<Person> people(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Person("First" + i, "Last" + i, ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)))
+                .toList();
+    }
+
+    @Test
+    public void idsAreUniqueAndRouteToTheirShard() {
+        try (ShardedPeopleRepository repo = ShardedPeopleRepository.inMemory(3)) {
+            List<Person> saved = repo.saveAll(people(10));
+            repo.save(new Person("John", "Smith", ZonedDateTime.now()));
+
+            assertThat(repo.count()).isEqualTo(11);
+            assertThat(repo.findAll()).extracting(Person::getId).doesNotHaveDuplicates().hasSize(11);
+            for (int shard = 0; shard < 3; shard++) {
+                int expected = shard;
+                assertThat(repo.getShard(shard).findAll()).isNotEmpty()
+                        .allSatisfy(person -> assertThat(repo.shardOf(person.getId())).isEqualTo(expected));
+            }
+            assertThat(repo.findById(saved.get(7).getId())).get().extracting(Person::getFirstName).isEqualTo("First7");
+            assertThatThrownBy(() -> repo.update(new Person("No", "Id", ZonedDateTime.now())))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void bulkOperationsSpanShards() {
+        try (ShardedPeopleRepository repo = ShardedPeopleRepository.inMemory(4)) {
+            List<Person> saved = repo.saveAll(people(20));
+            List<Long> ids = saved.stream().map(Person::getId).toList();
+
+            List<Person> found = repo.findAllById(ids.subList(0, 8));
+            assertThat(found).extracting(Person::getId).containsExactlyInAnyOrderElementsOf(ids.subList(0, 8));
+
+            found.forEach(person -> person.setSalary(new BigDecimal("100.00")));
+            repo.updateAll(found);
+            assertThat(repo.findAll()).filteredOn(person -> person.getSalary().signum() > 0).hasSize(8);
+
+            repo.deleteAllById(ids.subList(0, 5));
+            repo.delete(saved.get(19));
+            assertThat(repo.count()).isEqualTo(14);
+            assertThat(repo.findById(ids.get(0))).isEmpty();
+        }
+    }
+
+    @Test
+    public void reopenedShardsKeepHandingOutTheirOwnIds() {
+        try (ShardedPeopleRepository repo = ShardedPeopleRepository.open(dir, 2)) {
+            repo.saveAll(people(4));
+        }
+        try (ShardedPeopleRepository repo = ShardedPeopleRepository.open(dir, 2)) {
+            repo.saveAll(people(4));
+            assertThat(repo.findAll()).extracting(Person::getId).doesNotHaveDuplicates().hasSize(8);
+        }
+        assertThatThrownBy(() -> ShardedPeopleRepository.open(dir, 3))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("3 shards");
+    }
+}
@@ -0,0 +1,61 @@
+package com.sitg.peopledb.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatementCacheTests {
+
+    private Connection connection;
+    private StatementCache cache;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:statementcache");
+        cache = new StatementCache(connection, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        cache.close();
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void reusesPreparedStatementForSameSql() throws SQLException {
+        PreparedStatement first = cache.prepare("SELECT 1");
+        PreparedStatement second = cache.prepare("SELECT 1");
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictsAndClosesLeastRecentlyUsed() throws SQLException {
+        PreparedStatement one = cache.prepare("SELECT 1");
+        PreparedStatement two = cache.prepare("SELECT 2");
+        cache.prepare("SELECT 1");
+        cache.prepare("SELECT 3");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(two.isClosed()).isTrue();
+        assertThat(one.isClosed()).isFalse();
+    }
+
+    @Test
+    public void closeClosesAllStatements() throws SQLException {
+        PreparedStatement one = cache.prepare("SELECT 1");
+        cache.close();
+        assertThat(one.isClosed()).isTrue();
+        assertThat(cache.size()).isZero();
+    }
+}
@@ -0,0 +1,190 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransactionTests {
+    private static final String URL = "jdbc:h2:mem:transactiontest;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=50";
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneOffset.UTC);
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL);
+        PeopleSchema.create(keepAlive);
+        pool = new ConnectionPool(URL, 4);
+        repo = new PeopleRepository(pool);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.createStatement().execute("DROP ALL OBJECTS");
+        keepAlive.close();
+    }
+
+    @Test
+    public void commitsOnceOrRollsEverythingBack() {
+        Person saved = repo.inTransaction(() -> {
+            repo.save(new Person("John", "Smith", DOB));
+            return repo.save(new Person("Mary", "Jones", DOB));
+        });
+        assertThat(saved.getId()).isNotNull();
+        assertThat(repo.count()).isEqualTo(2);
+
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            repo.save(new Person("Bill", "Brown", DOB));
+            throw new IllegalStateException("boom");
+        })).hasMessage("boom");
+        assertThat(repo.count()).isEqualTo(2);
+    }
+
+    @Test
+    public void errorsRollBackToo() {
+        Person john = new Person("John", "Smith", DOB);
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            repo.save(john);
+            throw new AssertionError("boom");
+        })).isInstanceOf(AssertionError.class);
+        assertThat(repo.count()).isZero();
+        assertThat(john.getId()).isNull();
+
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            repo.save(new Person("Mary", "Jones", DOB));
+            try {
+                repo.inTransaction(() -> {
+                    repo.save(new Person("Bill", "Brown", DOB));
+                    throw new AssertionError("inner");
+                });
+            } catch (AssertionError expected) {
+            }
+            throw new AssertionError("outer");
+        })).hasMessage("outer");
+        assertThat(repo.count()).isZero();
+    }
+
+    @Test
+    public void rollbackRestoresWrittenEntities() {
+        Person john = repo.save(new Person("John", "Smith", DOB));
+        Person mary = new Person("Mary", "Jones", DOB);
+        john.setFirstName("Johnny");
+
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            repo.update(john);
+            repo.save(mary);
+            throw new IllegalStateException("boom");
+        })).hasMessage("boom");
+
+        assertThat(mary.getId()).isNull();
+        assertThat(mary.getVersion()).isNull();
+        assertThat(john.getVersion()).isEqualTo(1L);
+        assertThat(john.getChangedProperties()).containsExactly("firstName");
+        repo.update(john);
+        repo.save(mary);
+        assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Mary");
+    }
+
+    @Test
+    public void cacheNeverHoldsUncommittedRows() {
+        repo.setCache(new EntityCache<>(10));
+        long id = repo.save(new Person("John", "Smith", DOB)).getId();
+        repo.findById(id);
+
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            Person john = repo.findById(id).orElseThrow();
+            john.setFirstName("Johnny");
+            repo.update(john);
+            assertThat(repo.findById(id).orElseThrow().getFirstName()).isEqualTo("Johnny");
+            throw new IllegalStateException("boom");
+        })).hasMessage("boom");
+
+        assertThat(repo.findById(id).orElseThrow().getFirstName()).isEqualTo("John");
+    }
+
+    @Test
+    public void nestedFailureRollsBackToItsSavepoint() {
+        List<Long> saved = new ArrayList<>();
+        repo.addEntityListener(new EntityListener<>() {
+            @Override
+            public void onSaved(Person person) {
+                saved.add(person.getId());
+            }
+        });
+        repo.inTransaction(() -> {
+            repo.save(new Person("John", "Smith", DOB));
+            try {
+                repo.inTransaction(() -> {
+                    repo.save(new Person("Mary", "Jones", DOB));
+                    throw new IllegalStateException("boom");
+                });
+            } catch (IllegalStateException expected) {
+            }
+            repo.save(new Person("Bill", "Brown", DOB));
+        });
+
+        assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactlyInAnyOrder("John", "Bill");
+        assertThat(saved).hasSize(2);
+    }
+
+    @Test
+    public void retriesOnLockConflict() throws Exception {
+        Person john = repo.save(new Person("John", "Smith", DOB));
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (Connection connection = DriverManager.getConnection(URL);
+                 Statement stmt = connection.createStatement()) {
+                connection.setAutoCommit(false);
+                stmt.executeUpdate("UPDATE PEOPLE SET SALARY=1 WHERE ID=" + john.getId());
+                locked.countDown();
+                Thread.sleep(600);
+                connection.rollback();
+            } catch (SQLException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        holder.start();
+        locked.await();
+
+        assertThatThrownBy(() -> repo.inTransaction(1, () -> {
+            repo.update(salary(john.getId(), "2.00"));
+            return null;
+        })).matches(CRUDRepository::isLockConflict);
+
+        AtomicInteger attempts = new AtomicInteger();
+        repo.inTransaction(50, () -> {
+            attempts.incrementAndGet();
+            repo.update(salary(john.getId(), "3.00"));
+            return null;
+        });
+        holder.join();
+        assertThat(attempts).hasValueGreaterThan(1);
+        assertThat(repo.findById(john.getId()).orElseThrow().getSalary()).isEqualByComparingTo("3.00");
+    }
+
+    /** Reloads the person, so each attempt starts from the committed row. */
+    private Person salary(long id, String salary) {
+        Person person = repo.findById(id).orElseThrow();
+        person.setSalary(new BigDecimal(salary));
+        return person;
+    }
+}
@@ -0,0 +1,237 @@
+package com.sitg.peopledb.repository;
+
+import com.sitg.peopledb.exception.OptimisticLockException;
+import com.sitg.peopledb.exception.UnableToSaveException;
+import com.sitg.peopledb.metrics.InMemoryMetrics;
+import com.sitg.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WriteBehindRepositoryTests {
+    private static final String URL = "jdbc:h2:mem:writebehindtest;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL);
+        PeopleSchema.create(keepAlive);
+        pool = new ConnectionPool(() -> DriverManager.getConnection(URL), 4, Duration.ofSeconds(5), Duration.ofMinutes(1));
+        repo = new PeopleRepository(pool);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.createStatement().execute("DROP TABLE PEOPLE");
+        keepAlive.close();
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+
+    @Test
+    public void collapsesRepeatedUpdatesToOneRow() {
+        Person john = repo.save(newPerson("John"));
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        repo.setListener(metrics);
+        try (WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1))) {
+            for (int salary = 1; salary <= 10; salary++) {
+                Person copy = newPerson("John");
+                copy.setId(john.getId());
+                copy.setSalary(BigDecimal.valueOf(salary * 1000));
+                writeBehind.update(copy);
+            }
+            assertThat(writeBehind.getQueuedCount()).isEqualTo(1);
+            writeBehind.flush();
+            assertThat(writeBehind.getCoalescedCount()).isEqualTo(9);
+        }
+        assertThat(metrics.getStats(PeopleRepository.UPDATE_SQL).rows()).isEqualTo(1);
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("10000");
+    }
+
+    @Test
+    public void keepsPartialUpdatesFromDifferentInstances() {
+        Person saved = repo.save(newPerson("John"));
+        Person renamed = repo.findById(saved.getId()).get();
+        Person raised = repo.findById(saved.getId()).get();
+        renamed.setFirstName("Johnny");
+        raised.setSalary(new BigDecimal("5000"));
+        try (WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1))) {
+            writeBehind.update(renamed);
+            writeBehind.update(raised);
+            assertThat(writeBehind.getQueuedCount()).isEqualTo(2);
+        }
+        Person found = repo.findById(saved.getId()).get();
+        assertThat(found.getFirstName()).isEqualTo("Johnny");
+        assertThat(found.getSalary()).isEqualByComparingTo("5000");
+    }
+
+    @Test
+    public void flushFailsWhenRowChangedElsewhere() {
+        Person saved = repo.save(newPerson("John"));
+        Person queued = repo.findById(saved.getId()).get();
+        saved.setFirstName("Johnny");
+        repo.update(saved);
+        queued.setSalary(new BigDecimal("5000"));
+        WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1));
+        CompletableFuture<Void> update = writeBehind.update(queued);
+        CompletableFuture<Void> save = writeBehind.save(newPerson("Jane"));
+        writeBehind.close();
+
+        assertThatThrownBy(update::join).hasCauseInstanceOf(OptimisticLockException.class);
+        assertThat(save).isCompleted();
+        assertThat(repo.count()).isEqualTo(2);
+        assertThat(writeBehind.getFailedCount()).isEqualTo(1);
+        assertThat(repo.findById(saved.getId()).get().getSalary()).isEqualByComparingTo("0");
+        assertThat(queued.getVersion()).isEqualTo(1L);
+        assertThat(queued.getChangedProperties()).containsExactly("salary");
+    }
+
+    @Test
+    public void writesEntitiesAsTheyWereWhenQueued() {
+        Person john = repo.save(newPerson("John"));
+        try (WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1))) {
+            john.setSalary(new BigDecimal("1000"));
+            writeBehind.update(john);
+            john.setSalary(new BigDecimal("2000"));
+            writeBehind.flush();
+            assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("1000");
+            assertThat(john.getVersion()).isEqualTo(2L);
+            assertThat(john.getChangedProperties()).containsExactly("salary");
+
+            writeBehind.update(john);
+        }
+        assertThat(repo.findById(john.getId()).get().getSalary()).isEqualByComparingTo("2000");
+        assertThat(john.getVersion()).isEqualTo(3L);
+    }
+
+    @Test
+    public void deleteWinsOverQueuedUpdates() {
+        Person john = repo.save(newPerson("John"));
+        WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1));
+        writeBehind.update(john);
+        writeBehind.delete(john);
+        writeBehind.update(john);
+        Person unsaved = newPerson("Jane");
+        writeBehind.save(unsaved);
+        writeBehind.delete(unsaved);
+        assertThat(writeBehind.getQueuedCount()).isEqualTo(1);
+        writeBehind.close();
+        assertThat(repo.count()).isZero();
+    }
+
+    @Test
+    public void closeFlushesQueuedWrites() {
+        WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1));
+        for (int i = 0; i < 5; i++) {
+            writeBehind.save(newPerson("Person" + i));
+        }
+        assertThat(repo.count()).isZero();
+        writeBehind.close();
+        assertThat(repo.count()).isEqualTo(5);
+        assertThat(writeBehind.getFlushCount()).isEqualTo(1);
+        assertThatThrownBy(() -> writeBehind.save(newPerson("Late"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void flushesOnSizeAndInterval() throws InterruptedException {
+        try (WriteBehindRepository<Person> bySize = new WriteBehindRepository<>(repo, 10, 3, Duration.ofHours(1))) {
+            for (int i = 0; i < 3; i++) {
+                bySize.save(newPerson("Person" + i));
+            }
+            waitUntil(() -> repo.count() == 3);
+        }
+        try (WriteBehindRepository<Person> byTime = new WriteBehindRepository<>(repo, 10, 10, Duration.ofMillis(20))) {
+            byTime.save(newPerson("Later"));
+            waitUntil(() -> repo.count() == 4);
+        }
+    }
+
+    @Test
+    public void blocksWritersWhenBacklogIsFull() throws Exception {
+        CountDownLatch databaseIsSlow = new CountDownLatch(1);
+        repo.setListener(new RepositoryListener() {
+            @Override
+            public void onSuccess(String sql, long elapsedNanos, long rows) {
+                try {
+                    databaseIsSlow.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        List<Person> people = new CopyOnWriteArrayList<>();
+        try (WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 2, 2, Duration.ofHours(1))) {
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 6; i++) {
+                    Person person = newPerson("Person" + i);
+                    people.add(person);
+                    writeBehind.save(person);
+                }
+            });
+            Thread.sleep(200);
+            assertThat(writer).isNotDone();
+            assertThat(people).hasSize(3);
+            databaseIsSlow.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(people).allMatch(person -> person.getId() != null);
+    }
+
+    @Test
+    public void failedWriteIsDroppedAndTheRestCommitted() {
+        Person saved = repo.save(newPerson("John"));
+        WriteBehindRepository<Person> writeBehind = new WriteBehindRepository<>(repo, 100, 100, Duration.ofHours(1));
+        Person mary = newPerson("Mary");
+        CompletableFuture<Void> good = writeBehind.save(mary);
+        Person tooLong = newPerson("x".repeat(300));
+        CompletableFuture<Void> bad = writeBehind.save(tooLong);
+        CompletableFuture<Void> delete = writeBehind.delete(saved);
+        writeBehind.flush();
+
+        assertThat(good).isCompleted();
+        assertThat(delete).isCompleted();
+        assertThatThrownBy(bad::join).hasCauseInstanceOf(UnableToSaveException.class);
+        assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactly("Mary");
+        assertThat(mary.getId()).isNotNull();
+        assertThat(tooLong.getId()).isNull();
+        assertThat(tooLong.getVersion()).isNull();
+        assertThat(tooLong.getChangedProperties()).hasSize(4);
+        assertThat(writeBehind.getWrittenCount()).isEqualTo(2);
+        assertThat(writeBehind.getFailedCount()).isEqualTo(1);
+        writeBehind.close();
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.holds()) {
+            assertThat(System.nanoTime()).as("timed out waiting").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}